@@ -0,0 +1,94 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import ch.sourcepond.spring.web.blueprint.internal.SyntheticFramework.Target;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceReference;
+
+import java.util.ArrayList;
+
+import static ch.sourcepond.spring.web.blueprint.internal.Stubs.stub;
+import static ch.sourcepond.spring.web.blueprint.internal.SyntheticFramework.TARGET;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Measures the bean lookups of {@link BlueprintApplicationContext} against a synthetic
+ * Blueprint container. The {@code newGeneration} benchmarks let the container service be
+ * modified before each lookup, so they include filtering the components and resolving
+ * their types.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BeanLookupBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int components;
+
+    @Param({"0", "8"})
+    public int factoryDepth;
+
+    private BlueprintApplicationContext context;
+    private ServiceEvent modified;
+
+    @Setup
+    public void setup() {
+        final SyntheticFramework framework = new SyntheticFramework(components, factoryDepth, 100, 0);
+        context = new BlueprintApplicationContext(framework.getServletContext(), framework.getBundleContext());
+        modified = new ServiceEvent(ServiceEvent.MODIFIED, stub(ServiceReference.class).create());
+        context.getBean(Target.class);
+    }
+
+    @Benchmark
+    public String[] getBeanNamesForType() {
+        return context.getBeanNamesForType(ArrayList.class);
+    }
+
+    @Benchmark
+    public Target getBeanByType() {
+        return context.getBean(Target.class);
+    }
+
+    @Benchmark
+    public Class<?> getType() {
+        return context.getType(TARGET);
+    }
+
+    @Benchmark
+    public String[] newGenerationGetBeanNamesForType() {
+        context.serviceChanged(modified);
+        return context.getBeanNamesForType(ArrayList.class);
+    }
+
+    @Benchmark
+    public Class<?> newGenerationGetType() {
+        context.serviceChanged(modified);
+        return context.getType(TARGET);
+    }
+}
@@ -0,0 +1,102 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.AntPathMatcher;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Compares matching a pattern with {@link AntPathMatcher} against matching it with a compiled
+ * {@link PathPattern}, over the resource paths of a large web application bundle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PathPatternBenchmark {
+    static final int PATHS = 50000;
+
+    @Param({"**/*.class", "com/acme/web/**/*.class", "META-INF/*.xml", "**/web/*-context.xml"})
+    public String pattern;
+
+    private final AntPathMatcher matcher = new AntPathMatcher();
+    private String[] paths;
+    private PathPattern compiled;
+
+    /**
+     * Creates the paths of a typical web application bundle: classes in a package tree,
+     * static web resources and some descriptors.
+     */
+    static String[] createPaths(final int count) {
+        final String[] modules = {"web", "service", "persistence", "security", "util"};
+        final String[] extensions = {".class", ".class", ".class", ".js", ".css", ".html", ".properties", ".xml"};
+        final String[] paths = new String[count];
+        paths[0] = "META-INF/MANIFEST.MF";
+        paths[1] = "META-INF/spring/web-context.xml";
+        paths[2] = "META-INF/spring/service-context.xml";
+        paths[3] = "WEB-INF/web.xml";
+        for (int i = 4; i < count; i++) {
+            final String extension = extensions[i % extensions.length];
+            final String module = modules[i % modules.length];
+            if (".class".equals(extension)) {
+                paths[i] = "com/acme/" + module + "/pkg" + (i % 97) + "/Type" + i + extension;
+            } else {
+                paths[i] = "static/" + module + "/dir" + (i % 31) + "/resource" + i + extension;
+            }
+        }
+        return paths;
+    }
+
+    @Setup
+    public void setup() {
+        paths = createPaths(PATHS);
+        compiled = PathPattern.compile(matcher, pattern);
+    }
+
+    @Benchmark
+    public int antPathMatcher() {
+        int matches = 0;
+        for (final String path : paths) {
+            if (matcher.match(pattern, path)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int compiledPattern() {
+        int matches = 0;
+        for (final String path : paths) {
+            if (compiled.matches(path)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
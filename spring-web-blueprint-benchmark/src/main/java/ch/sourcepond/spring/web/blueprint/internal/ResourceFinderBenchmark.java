@@ -0,0 +1,87 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Enumeration;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Measures {@link ResourceFinderClassLoader#findResources(String)} over a synthetic framework
+ * with the number of library bundles specified: a resource provided by a single library, a
+ * resource provided by every bundle and a resource which does not exist.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResourceFinderBenchmark {
+
+    @Param({"10", "100"})
+    public int libraries;
+
+    @Param({"1000", "10000"})
+    public int resources;
+
+    private ResourceFinderClassLoader finder;
+    private String single;
+
+    private static int drain(final Enumeration<URL> urls) {
+        int count = 0;
+        while (urls.hasMoreElements()) {
+            urls.nextElement();
+            count++;
+        }
+        return count;
+    }
+
+    @Setup
+    public void setup() {
+        final SyntheticFramework framework = new SyntheticFramework(100, 0, resources, libraries);
+        finder = new ResourceFinderClassLoader(framework.getBundleContext());
+        final String[] paths = PathPatternBenchmark.createPaths(resources);
+        single = SyntheticFramework.relocate(paths[paths.length - 1], libraries / 2);
+    }
+
+    @Benchmark
+    public int findResourceOfSingleBundle() throws IOException {
+        return drain(finder.findResources(single));
+    }
+
+    @Benchmark
+    public int findResourceOfAllBundles() throws IOException {
+        return drain(finder.findResources("META-INF/MANIFEST.MF"));
+    }
+
+    @Benchmark
+    public int findMissingResource() throws IOException {
+        return drain(finder.findResources("com/acme/missing/Missing.class"));
+    }
+}
@@ -0,0 +1,75 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+import java.io.IOException;
+
+import static ch.sourcepond.spring.web.blueprint.internal.Stubs.stub;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Measures {@link BundleResourcePatternResolver#getResources(String)} over the resource tree of a
+ * synthetic web bundle. If {@code cached} is {@code false}, the bundle reports a new
+ * modification time on every access, so results are never taken from the
+ * {@link ResourceResultCache}. The delegate resolver never finds anything.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResourceResolutionBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int resources;
+
+    @Param({"classpath*:com/acme/web/**/*.class", "classpath:META-INF/spring/*-context.xml",
+            "osgibundle:static/**/*.css", "classpath*:missing/**/*.xml"})
+    public String pattern;
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    private BundleResourcePatternResolver resolver;
+
+    @Setup
+    public void setup() {
+        final SyntheticFramework framework = new SyntheticFramework(100, 0, resources, 0);
+        framework.setModifying(!cached);
+        resolver = new BundleResourcePatternResolver(stub(ResourcePatternResolver.class)
+                .returns("getResources", new Resource[0])
+                .create());
+        resolver.setBundle(framework.getWebBundle());
+    }
+
+    @Benchmark
+    public Resource[] getResources() throws IOException {
+        return resolver.getResources(pattern);
+    }
+}
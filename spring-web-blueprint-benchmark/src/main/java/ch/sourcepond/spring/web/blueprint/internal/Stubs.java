@@ -0,0 +1,98 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Creates in-memory stand-ins of framework interfaces through dynamic proxies. Methods which
+ * have no answer registered return {@code null}, {@code false} or zero, so only the methods
+ * actually used by the code under test need to be implemented.
+ */
+final class Stubs<T> {
+    private final Map<String, Function<Object[], Object>> answers = new HashMap<>();
+    private final Class<T> type;
+
+    private Stubs(final Class<T> type) {
+        this.type = type;
+    }
+
+    static <T> Stubs<T> stub(final Class<T> type) {
+        return new Stubs<>(type);
+    }
+
+    /**
+     * Registers the answer of all methods with the name specified, regardless of their
+     * parameters.
+     */
+    Stubs<T> on(final String methodName, final Function<Object[], Object> answer) {
+        answers.put(methodName, answer);
+        return this;
+    }
+
+    Stubs<T> returns(final String methodName, final Object value) {
+        return on(methodName, args -> value);
+    }
+
+    T create() {
+        final String name = type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(answers));
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            final Function<Object[], Object> answer = answers.get(method.getName());
+            if (answer != null) {
+                return answer.apply(args == null ? new Object[0] : args);
+            }
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return name;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }));
+    }
+
+    private static Object defaultValue(final Class<?> returnType) {
+        if (!returnType.isPrimitive() || returnType == void.class) {
+            return null;
+        }
+        if (returnType == boolean.class) {
+            return false;
+        }
+        if (returnType == char.class) {
+            return '\0';
+        }
+        if (returnType == long.class) {
+            return 0L;
+        }
+        if (returnType == float.class) {
+            return 0f;
+        }
+        if (returnType == double.class) {
+            return 0d;
+        }
+        if (returnType == byte.class) {
+            return (byte) 0;
+        }
+        if (returnType == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+}
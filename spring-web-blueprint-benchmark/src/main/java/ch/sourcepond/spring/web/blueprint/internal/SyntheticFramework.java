@@ -0,0 +1,323 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.Version;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.service.blueprint.container.BlueprintContainer;
+import org.osgi.service.blueprint.container.NoSuchComponentException;
+import org.osgi.service.blueprint.reflect.BeanMetadata;
+import org.osgi.service.blueprint.reflect.ComponentMetadata;
+import org.osgi.service.blueprint.reflect.ReferenceMetadata;
+
+import javax.servlet.ServletContext;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static ch.sourcepond.spring.web.blueprint.internal.Stubs.stub;
+import static java.util.Collections.emptyEnumeration;
+import static java.util.Collections.enumeration;
+import static java.util.Collections.singletonList;
+import static org.osgi.framework.Constants.SYSTEM_BUNDLE_ID;
+
+/**
+ * In-memory OSGi framework with a web application bundle (WAB), its Blueprint container and a
+ * number of library bundles. Components and resources are generated synthetically:
+ * <ul>
+ * <li>the container holds the environment components of a real Blueprint container, one
+ * component of type {@link Target} which is created through a chain of {@link Factory}
+ * components of the depth specified, service references, and plain beans of JDK types
+ * up to the number of components specified;</li>
+ * <li>every bundle has a resource tree of the size specified, see
+ * {@link PathPatternBenchmark#createPaths(int)}; the trees of library bundles are located
+ * under {@code org/lib<i>} and {@code lib<i>/static} instead of {@code com/acme} and
+ * {@code static}, see {@link #relocate(String, int)}.</li>
+ * </ul>
+ */
+final class SyntheticFramework {
+    static final String TARGET = "target";
+    static final long WEB_BUNDLE_ID = 100;
+    private static final Class<?>[] TYPES = {ArrayList.class, HashMap.class, LinkedList.class,
+            TreeMap.class, StringBuilder.class, AtomicLong.class};
+    private static final String[] ENVIRONMENT = {"blueprintBundle", "blueprintBundleContext",
+            "blueprintContainer", "blueprintConverter"};
+    private static final URLStreamHandler HANDLER = new URLStreamHandler() {
+        @Override
+        protected URLConnection openConnection(final URL u) throws IOException {
+            throw new IOException("Synthetic resources cannot be opened: " + u);
+        }
+    };
+
+    /**
+     * Type of the single component which is created through a factory chain.
+     */
+    public static final class Target {
+    }
+
+    /**
+     * Type of the components of the factory chain.
+     */
+    public static final class Factory {
+
+        public Factory next() {
+            return new Factory();
+        }
+
+        public Target target() {
+            return new Target();
+        }
+    }
+
+    private final Map<String, ComponentMetadata> metadata = new LinkedHashMap<>();
+    private final Map<String, Object> instances = new HashMap<>();
+    private final Map<Long, Bundle> bundles = new LinkedHashMap<>();
+    private final AtomicLong modifications = new AtomicLong();
+    private final BlueprintContainer container;
+    private final BundleContext bundleContext;
+    private final ServletContext servletContext;
+    private final Bundle webBundle;
+    private volatile boolean modifying;
+
+    SyntheticFramework(final int components, final int factoryDepth, final int resources, final int libraries) {
+        createComponents(components, factoryDepth);
+        container = stub(BlueprintContainer.class)
+                .returns("getComponentIds", metadata.keySet())
+                .on("getComponentMetadata", args -> lookup(metadata, (String) args[0]))
+                .on("getComponentInstance", args -> lookup(instances, (String) args[0]))
+                .create();
+
+        bundles.put(SYSTEM_BUNDLE_ID, createBundle(SYSTEM_BUNDLE_ID, "system.bundle", relocate(
+                PathPatternBenchmark.createPaths(100), 0)));
+        webBundle = createBundle(WEB_BUNDLE_ID, "web.bundle", PathPatternBenchmark.createPaths(resources));
+        bundles.put(WEB_BUNDLE_ID, webBundle);
+        for (int i = 1; i <= libraries; i++) {
+            bundles.put(WEB_BUNDLE_ID + i, createBundle(WEB_BUNDLE_ID + i, "lib" + i, relocate(
+                    PathPatternBenchmark.createPaths(resources), i)));
+        }
+
+        final ServiceReference<?> reference = stub(ServiceReference.class).create();
+        final Bundle[] all = bundles.values().toArray(new Bundle[0]);
+        bundleContext = stub(BundleContext.class)
+                .on("getBundle", args -> args.length == 0 ? webBundle : bundles.get((Long) args[0]))
+                .returns("getBundles", all)
+                .on("getServiceReferences", args -> args[0] instanceof Class ?
+                        singletonList(reference) : new ServiceReference<?>[]{reference})
+                .returns("getService", container)
+                .create();
+        servletContext = stub(ServletContext.class)
+                .returns("getInitParameterNames", emptyEnumeration())
+                .returns("getAttributeNames", emptyEnumeration())
+                .create();
+    }
+
+    private static <T> T lookup(final Map<String, T> map, final String id) {
+        final T value = map.get(id);
+        if (value == null) {
+            throw new NoSuchComponentException(id);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the path of the library bundle specified which corresponds to the path of the
+     * web bundle specified; library 0 is the system bundle.
+     */
+    static String relocate(final String path, final int library) {
+        return path.replace("com/acme/", "org/lib" + library + "/").replace("static/", "lib" + library + "/static/");
+    }
+
+    private static String[] relocate(final String[] paths, final int library) {
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = relocate(paths[i], library);
+        }
+        return paths;
+    }
+
+    // Like most beans declared in blueprint XML, the beans have no explicit scope
+    private static BeanMetadata bean(final String id, final String className, final ComponentMetadata factory,
+                                     final String factoryMethod) {
+        return stub(BeanMetadata.class)
+                .returns("getId", id)
+                .returns("getClassName", className)
+                .returns("getFactoryComponent", factory)
+                .returns("getFactoryMethod", factoryMethod)
+                .create();
+    }
+
+    private void createComponents(final int components, final int factoryDepth) {
+        for (final String id : ENVIRONMENT) {
+            metadata.put(id, stub(ComponentMetadata.class).returns("getId", id).create());
+            instances.put(id, new Object());
+        }
+
+        ComponentMetadata factory = null;
+        for (int i = 0; i < factoryDepth; i++) {
+            final String id = "factory" + i;
+            factory = factory == null ? bean(id, Factory.class.getName(), null, null) : bean(id, null, factory, "next");
+            metadata.put(id, factory);
+            instances.put(id, new Factory());
+        }
+        metadata.put(TARGET, factory == null ? bean(TARGET, Target.class.getName(), null, null) : bean(TARGET, null, factory, "target"));
+        instances.put(TARGET, new Target());
+
+        for (int i = 0; metadata.size() - ENVIRONMENT.length < components; i++) {
+            final String id = "component" + i;
+            if (i % 10 == 0) {
+                metadata.put(id, stub(ReferenceMetadata.class)
+                        .returns("getId", id)
+                        .returns("getInterface", List.class.getName())
+                        .create());
+                instances.put(id, new ArrayList<>());
+            } else {
+                final Class<?> type = TYPES[i % TYPES.length];
+                metadata.put(id, bean(id, type.getName(), null, null));
+                try {
+                    instances.put(id, type.newInstance());
+                } catch (final ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    private static Class<?> load(final String className) {
+        try {
+            return Class.forName(className);
+        } catch (final ClassNotFoundException e) {
+            // All generated components have types which exist
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static URL toUrl(final long bundleId, final String path) {
+        try {
+            return new URL("bundle", bundleId + ".0", -1, "/" + path, HANDLER);
+        } catch (final MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the paths below the root specified whose name matches the file pattern
+     * specified, like {@link BundleWiring#listResources(String, String, int)}.
+     */
+    private static List<String> list(final String[] paths, final String root, final String filePattern,
+                                     final boolean recurse) {
+        final String prefix = root.startsWith("/") ? root.substring(1) : root;
+        final String directory = prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/";
+        final Pattern name = Pattern.compile(("\\Q" + filePattern + "\\E").replace("*", "\\E.*\\Q"));
+        final List<String> listed = new ArrayList<>();
+        for (final String path : paths) {
+            if (path.startsWith(directory)) {
+                final int separator = path.lastIndexOf('/');
+                if ((recurse || separator < directory.length())
+                        && name.matcher(path.substring(separator + 1)).matches()) {
+                    listed.add(path);
+                }
+            }
+        }
+        return listed;
+    }
+
+    private Bundle createBundle(final long id, final String symbolicName, final String[] paths) {
+        final Map<String, URL> urls = new HashMap<>();
+        for (final String path : paths) {
+            urls.put(path, toUrl(id, path));
+        }
+        final ClassLoader loader = new ClassLoader(null) {
+
+            @Override
+            public URL getResource(final String name) {
+                return urls.get(name);
+            }
+
+            @Override
+            public Enumeration<URL> getResources(final String name) {
+                final URL url = urls.get(name);
+                return url == null ? emptyEnumeration() : enumeration(singletonList(url));
+            }
+        };
+        final BundleWiring wiring = stub(BundleWiring.class)
+                .returns("getClassLoader", loader)
+                .returns("isInUse", true)
+                .on("listResources", args -> list(paths, (String) args[0], (String) args[1],
+                        ((Integer) args[2] & BundleWiring.LISTRESOURCES_RECURSE) != 0))
+                .create();
+        final BundleRevision revision = stub(BundleRevision.class).create();
+        return stub(Bundle.class)
+                .returns("getBundleId", id)
+                .returns("getSymbolicName", symbolicName)
+                .returns("getVersion", Version.emptyVersion)
+                .returns("getState", Bundle.ACTIVE)
+                .on("getLastModified", args -> modifying ? modifications.incrementAndGet() : 0L)
+                .on("adapt", args -> args[0] == BundleWiring.class ? wiring : args[0] == BundleRevision.class ? revision : null)
+                .on("loadClass", args -> load((String) args[0]))
+                .on("getEntry", args -> urls.get(args[0]))
+                .on("findEntries", args -> {
+                    final Collection<URL> found = new ArrayList<>();
+                    for (final String path : list(paths, (String) args[0], (String) args[1], (Boolean) args[2])) {
+                        found.add(urls.get(path));
+                    }
+                    return found.isEmpty() ? null : enumeration(found);
+                })
+                .on("getBundleContext", args -> bundleContext)
+                .create();
+    }
+
+    /**
+     * If {@code true}, the last-modified time of every bundle changes on each access, so
+     * that results cached for a bundle are never reused.
+     */
+    void setModifying(final boolean modifying) {
+        this.modifying = modifying;
+    }
+
+    BlueprintContainer getContainer() {
+        return container;
+    }
+
+    BundleContext getBundleContext() {
+        return bundleContext;
+    }
+
+    ServletContext getServletContext() {
+        return servletContext;
+    }
+
+    Bundle getWebBundle() {
+        return webBundle;
+    }
+
+    Collection<Bundle> getBundles() {
+        return bundles.values();
+    }
+}
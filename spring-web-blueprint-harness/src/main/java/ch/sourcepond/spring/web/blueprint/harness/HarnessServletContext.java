@@ -0,0 +1,200 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.harness;
+
+import org.osgi.framework.Bundle;
+
+import javax.servlet.FilterRegistration;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextAttributeEvent;
+import javax.servlet.ServletContextAttributeListener;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.EventListener;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Collections.enumeration;
+
+/**
+ * Minimal {@link ServletContext} of a single web bundle, as far as it is used by the Blueprint
+ * initializer and the Spring web application context. Attributes and init parameters are kept in
+ * memory, attribute listeners are notified and filters are accepted but never invoked. Resources
+ * are the entries of the bundle, like with an OSGi web extender. All other methods return
+ * {@code null} or zero.
+ */
+final class HarnessServletContext implements InvocationHandler {
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final List<ServletContextAttributeListener> listeners = new ArrayList<>();
+    private final Map<String, String> initParameters;
+    private final Bundle bundle;
+    private final String contextPath;
+    private final ServletContext proxy;
+
+    HarnessServletContext(final Bundle bundle, final String contextPath, final Map<String, String> initParameters) {
+        this.bundle = bundle;
+        this.contextPath = contextPath;
+        this.initParameters = new HashMap<>(initParameters);
+        proxy = (ServletContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ServletContext.class}, this);
+    }
+
+    ServletContext getServletContext() {
+        return proxy;
+    }
+
+    /**
+     * Waits until the attribute specified has been set and returns its value.
+     */
+    synchronized Object awaitAttribute(final String name, final long timeoutMillis)
+            throws InterruptedException, TimeoutException {
+        final long deadline = currentTimeMillis() + timeoutMillis;
+        Object value = attributes.get(name);
+        while (value == null) {
+            final long remaining = deadline - currentTimeMillis();
+            if (remaining <= 0) {
+                throw new TimeoutException(format("Attribute %s not set within %d ms", name, timeoutMillis));
+            }
+            wait(remaining);
+            value = attributes.get(name);
+        }
+        return value;
+    }
+
+    private void setAttribute(final String name, final Object value) {
+        if (value == null) {
+            removeAttribute(name);
+            return;
+        }
+        final Object previous = attributes.put(name, value);
+        synchronized (this) {
+            notifyAll();
+        }
+        for (final ServletContextAttributeListener listener : listeners) {
+            if (previous == null) {
+                listener.attributeAdded(new ServletContextAttributeEvent(proxy, name, value));
+            } else {
+                listener.attributeReplaced(new ServletContextAttributeEvent(proxy, name, previous));
+            }
+        }
+    }
+
+    private void removeAttribute(final String name) {
+        final Object previous = attributes.remove(name);
+        if (previous != null) {
+            for (final ServletContextAttributeListener listener : listeners) {
+                listener.attributeRemoved(new ServletContextAttributeEvent(proxy, name, previous));
+            }
+        }
+    }
+
+    private FilterRegistration.Dynamic addFilter(final String name) {
+        return (FilterRegistration.Dynamic) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{FilterRegistration.Dynamic.class}, (p, method, args) -> {
+                    if ("getName".equals(method.getName())) {
+                        return name;
+                    }
+                    return method.getReturnType() == boolean.class ? Boolean.TRUE : null;
+                });
+    }
+
+    private Set<String> getResourcePaths(final String path) {
+        final Enumeration<String> entries = bundle.getEntryPaths(path);
+        if (entries == null) {
+            return null;
+        }
+        final Set<String> paths = new LinkedHashSet<>();
+        while (entries.hasMoreElements()) {
+            paths.add("/" + entries.nextElement());
+        }
+        return paths;
+    }
+
+    private InputStream getResourceAsStream(final String path) {
+        final URL entry = bundle.getEntry(path);
+        try {
+            return entry == null ? null : entry.openStream();
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Object invoke(final Object p, final Method method, final Object[] args) {
+        switch (method.getName()) {
+            case "getAttribute":
+                return attributes.get((String) args[0]);
+            case "getAttributeNames":
+                return enumeration(new ArrayList<>(attributes.keySet()));
+            case "setAttribute":
+                setAttribute((String) args[0], args[1]);
+                return null;
+            case "removeAttribute":
+                removeAttribute((String) args[0]);
+                return null;
+            case "getInitParameter":
+                return initParameters.get((String) args[0]);
+            case "getInitParameterNames":
+                return enumeration(initParameters.keySet());
+            case "setInitParameter":
+                return initParameters.putIfAbsent((String) args[0], (String) args[1]) == null;
+            case "addListener":
+                if (args[0] instanceof ServletContextAttributeListener) {
+                    listeners.add((ServletContextAttributeListener) args[0]);
+                } else if (!(args[0] instanceof EventListener)) {
+                    throw new UnsupportedOperationException("Only listener instances are supported");
+                }
+                return null;
+            case "addFilter":
+                return addFilter((String) args[0]);
+            case "getResource":
+                return bundle.getEntry((String) args[0]);
+            case "getResourceAsStream":
+                return getResourceAsStream((String) args[0]);
+            case "getResourcePaths":
+                return getResourcePaths((String) args[0]);
+            case "getContextPath":
+                return contextPath;
+            case "getServletContextName":
+                return contextPath;
+            case "getClassLoader":
+                return getClass().getClassLoader();
+            case "getMajorVersion":
+                return 3;
+            case "getMinorVersion":
+                return 1;
+            case "equals":
+                return p == args[0];
+            case "hashCode":
+                return System.identityHashCode(p);
+            case "toString":
+                return "ServletContext[" + contextPath + "]";
+            default:
+                return method.getReturnType() == int.class ? 0 : null;
+        }
+    }
+}
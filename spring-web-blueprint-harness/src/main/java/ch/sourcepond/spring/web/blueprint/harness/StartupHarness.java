@@ -0,0 +1,302 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.harness;
+
+import ch.sourcepond.spring.web.blueprint.BlueprintServletContainerInitializer;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.launch.FrameworkFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.servlet.ServletContext;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static ch.sourcepond.spring.web.blueprint.internal.StartupMetrics.BLUEPRINT_STARTUP_METRICS;
+import static java.lang.Integer.getInteger;
+import static java.lang.String.format;
+import static java.lang.System.getProperty;
+import static java.lang.System.nanoTime;
+import static java.util.Collections.emptySet;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Measures the deployment of generated web bundles on an embedded OSGi framework with Apache Aries
+ * Blueprint. Spring, the Servlet API, SLF4J, the Blueprint API and this project are loaded from
+ * the class-path and exported by the system bundle; only the Blueprint implementation and the
+ * generated bundles run inside the framework. The first deployment is reported as cold, all
+ * further deployments in the same JVM as warm.
+ * <p>
+ * A deployment is measured from starting the bundle, which happens immediately before
+ * {@link BlueprintServletContainerInitializer#onStartup(Set, ServletContext)} like in a web
+ * extender, until the web application context has been published. Allocated bytes are
+ * summed over all threads which are alive before and after the deployment.
+ * <p>
+ * Configuration through system properties (defaults in brackets): {@code harness.bundles}
+ * directory of the bundles to install [target/harness-bundles], {@code harness.iterations} [11],
+ * {@code harness.components} [1000], {@code harness.factoryDepth} [5], {@code harness.springBeans}
+ * [100], {@code harness.resources} [1000]. Properties named {@code harness.param.<name>} are
+ * passed as init parameters to the servlet context.
+ */
+public final class StartupHarness {
+    static final String OSGI_BUNDLECONTEXT = "osgi-bundlecontext";
+    static final String BLUEPRINT_CONTEXT = "blueprintContext";
+    static final String PARAM_PREFIX = "harness.param.";
+    static final long DEPLOYMENT_TIMEOUT = 60000;
+    static final String SIMPLE_LOGGER_LEVEL = "org.slf4j.simpleLogger.defaultLogLevel";
+
+    /**
+     * Package prefixes which are exported by the system bundle, and the version they are
+     * exported with; packages whose version is not imported with a range are exported
+     * without version.
+     */
+    private static final Map<String, String> EXPORTS = new LinkedHashMap<>();
+
+    static {
+        EXPORTS.put("org.osgi.service.blueprint.", "1.0.2");
+        EXPORTS.put("org.slf4j", "1.7.25");
+        EXPORTS.put("org.springframework.", null);
+        EXPORTS.put("javax.servlet", null);
+        EXPORTS.put("ch.sourcepond.spring.web.blueprint", null);
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final WabGenerator generator;
+    private final Map<String, String> initParameters = new HashMap<>();
+    private final File bundles;
+    private final int iterations;
+    private Framework framework;
+
+    private StartupHarness() {
+        generator = new WabGenerator(getInteger("harness.components", 1000), getInteger("harness.factoryDepth", 5),
+                getInteger("harness.springBeans", 100), getInteger("harness.resources", 1000));
+        bundles = new File(getProperty("harness.bundles", "target/harness-bundles"));
+        iterations = getInteger("harness.iterations", 11);
+        initParameters.put("blueprintContainerTimeout", String.valueOf(DEPLOYMENT_TIMEOUT));
+        for (final String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(PARAM_PREFIX)) {
+                initParameters.put(name.substring(PARAM_PREFIX.length()), getProperty(name));
+            }
+        }
+    }
+
+    /**
+     * Collects the packages of the class-path entries which match one of the {@link #EXPORTS}.
+     */
+    private static String systemPackagesExtra() throws IOException {
+        final Set<String> packages = new TreeSet<>();
+        for (final String entry : getProperty("java.class.path").split(File.pathSeparator)) {
+            final File file = new File(entry);
+            if (file.isDirectory()) {
+                collectPackages(file, "", packages);
+            } else if (file.isFile()) {
+                try (final JarFile jar = new JarFile(file)) {
+                    final Enumeration<JarEntry> entries = jar.entries();
+                    while (entries.hasMoreElements()) {
+                        addPackage(entries.nextElement().getName(), packages);
+                    }
+                }
+            }
+        }
+
+        final StringBuilder exports = new StringBuilder();
+        for (final String pkg : packages) {
+            for (final Map.Entry<String, String> export : EXPORTS.entrySet()) {
+                if (pkg.startsWith(export.getKey())) {
+                    if (exports.length() > 0) {
+                        exports.append(',');
+                    }
+                    exports.append(pkg);
+                    if (export.getValue() != null) {
+                        exports.append(";version=").append(export.getValue());
+                    }
+                    break;
+                }
+            }
+        }
+        return exports.toString();
+    }
+
+    private static void collectPackages(final File directory, final String path, final Set<String> packages) {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                final String name = path + file.getName();
+                if (file.isDirectory()) {
+                    collectPackages(file, name + "/", packages);
+                } else {
+                    addPackage(name, packages);
+                }
+            }
+        }
+    }
+
+    private static void addPackage(final String name, final Set<String> packages) {
+        final int idx = name.lastIndexOf('/');
+        if (idx > 0 && name.endsWith(".class")) {
+            packages.add(name.substring(0, idx).replace('/', '.'));
+        }
+    }
+
+    private static long allocatedBytes() {
+        long sum = 0;
+        for (final long allocated : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            if (allocated > 0) {
+                sum += allocated;
+            }
+        }
+        return sum;
+    }
+
+    private void start() throws IOException, BundleException {
+        final Map<String, String> config = new HashMap<>();
+        config.put(Constants.FRAMEWORK_STORAGE, new File("target/felix-cache").getAbsolutePath());
+        config.put(Constants.FRAMEWORK_STORAGE_CLEAN, Constants.FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT);
+        config.put(Constants.FRAMEWORK_SYSTEMPACKAGES_EXTRA, systemPackagesExtra());
+        framework = ServiceLoader.load(FrameworkFactory.class).iterator().next().newFramework(config);
+        framework.start();
+
+        final File[] jars = bundles.listFiles((dir, name) -> name.endsWith(".jar"));
+        if (jars == null || jars.length == 0) {
+            throw new IllegalStateException("No bundles found in " + bundles.getAbsolutePath()
+                    + "; build the module with Maven first or set harness.bundles");
+        }
+        Arrays.sort(jars);
+        final List<Bundle> installed = new ArrayList<>();
+        final BundleContext context = framework.getBundleContext();
+        for (final File jar : jars) {
+            try (final InputStream in = new FileInputStream(jar)) {
+                installed.add(context.installBundle(jar.toURI().toString(), in));
+            }
+        }
+        for (final Bundle bundle : installed) {
+            bundle.start();
+        }
+    }
+
+    private void stop() throws BundleException, InterruptedException {
+        framework.stop();
+        framework.waitForStop(DEPLOYMENT_TIMEOUT);
+    }
+
+    /**
+     * Deploys a newly generated WAB, waits until its web application context has been published,
+     * and uninstalls it afterwards.
+     */
+    private Deployment deploy(final int iteration) throws Exception {
+        final String contextPath = "/harness" + iteration;
+        final byte[] content = generator.generate("harness.wab" + iteration, contextPath);
+        final Bundle wab = framework.getBundleContext().installBundle("harness:wab" + iteration,
+                new ByteArrayInputStream(content));
+        final HarnessServletContext servletContext = new HarnessServletContext(wab, contextPath, initParameters);
+        final ServletContext sctx = servletContext.getServletContext();
+
+        final long allocated = allocatedBytes();
+        final long start = nanoTime();
+        wab.start();
+        final BlueprintServletContainerInitializer initializer = new BlueprintServletContainerInitializer();
+        initializer.onStartup(emptySet(), sctx);
+        sctx.setAttribute(OSGI_BUNDLECONTEXT, wab.getBundleContext());
+        final Object published = servletContext.awaitAttribute(BLUEPRINT_CONTEXT, DEPLOYMENT_TIMEOUT);
+        final Deployment deployment = new Deployment(nanoTime() - start, allocatedBytes() - allocated,
+                sctx.getAttribute(BLUEPRINT_STARTUP_METRICS));
+
+        try {
+            if (published instanceof Exception) {
+                throw new IllegalStateException("Deployment of " + wab + " failed", (Exception) published);
+            }
+            ((ConfigurableApplicationContext) published).close();
+        } finally {
+            wab.uninstall();
+        }
+        return deployment;
+    }
+
+    private static long median(final long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static void report(final String label, final List<Deployment> deployments) {
+        final long[] millis = new long[deployments.size()];
+        final long[] kilobytes = new long[deployments.size()];
+        for (int i = 0; i < millis.length; i++) {
+            millis[i] = NANOSECONDS.toMillis(deployments.get(i).nanos);
+            kilobytes[i] = deployments.get(i).allocated / 1024;
+        }
+        System.out.println(format("%-5s runs=%d time[ms] min=%d median=%d max=%d allocated[KiB] median=%d",
+                label, millis.length, Arrays.stream(millis).min().getAsLong(), median(millis),
+                Arrays.stream(millis).max().getAsLong(), median(kilobytes)));
+        System.out.println(format("%-5s last %s", label, deployments.get(deployments.size() - 1).metrics));
+    }
+
+    private void run() throws Exception {
+        start();
+        try {
+            final List<Deployment> cold = new ArrayList<>();
+            final List<Deployment> warm = new ArrayList<>();
+            for (int i = 0; i < iterations; i++) {
+                (i == 0 ? cold : warm).add(deploy(i));
+            }
+            report("cold", cold);
+            if (!warm.isEmpty()) {
+                report("warm", warm);
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        // Keep the report readable unless logging has been configured explicitly
+        if (getProperty(SIMPLE_LOGGER_LEVEL) == null) {
+            System.setProperty(SIMPLE_LOGGER_LEVEL, "warn");
+        }
+        new StartupHarness().run();
+    }
+
+    private static final class Deployment {
+        final long nanos;
+        final long allocated;
+        final Object metrics;
+
+        Deployment(final long nanos, final long allocated, final Object metrics) {
+            this.nanos = nanos;
+            this.allocated = allocated;
+            this.metrics = metrics;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.harness;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Generates web application bundles (WABs) of a configurable size. A generated WAB contains
+ * <ul>
+ * <li>a Blueprint descriptor with the number of components specified: a chain of
+ * {@link StringBuilder} factories of the depth specified, optional service references and beans
+ * of JDK collection types;</li>
+ * <li>a Spring descriptor at the default location {@code /WEB-INF/applicationContext.xml} with
+ * the number of beans specified, each of them referring to a Blueprint component;</li>
+ * <li>the number of static resources specified.</li>
+ * </ul>
+ * Only JDK classes are used, so the WAB does not contain any class files. Everything else is
+ * imported dynamically from the framework.
+ */
+final class WabGenerator {
+    private static final String[] TYPES = {"java.util.ArrayList", "java.util.HashMap", "java.util.LinkedList",
+            "java.util.TreeMap", "java.util.HashSet"};
+    private final int components;
+    private final int factoryDepth;
+    private final int springBeans;
+    private final int resources;
+
+    WabGenerator(final int components, final int factoryDepth, final int springBeans, final int resources) {
+        this.components = components;
+        this.factoryDepth = factoryDepth;
+        this.springBeans = springBeans;
+        this.resources = resources;
+    }
+
+    /**
+     * Adds a file together with the entries of its parent directories which have not been
+     * added yet, like a jar tool would do.
+     */
+    private static void add(final JarOutputStream out, final Set<String> directories, final String name,
+                            final String content) throws IOException {
+        for (int idx = name.indexOf('/'); idx != -1; idx = name.indexOf('/', idx + 1)) {
+            final String directory = name.substring(0, idx + 1);
+            if (directories.add(directory)) {
+                out.putNextEntry(new JarEntry(directory));
+                out.closeEntry();
+            }
+        }
+        out.putNextEntry(new JarEntry(name));
+        out.write(content.getBytes(UTF_8));
+        out.closeEntry();
+    }
+
+    private static Manifest manifest(final String symbolicName, final String contextPath) {
+        final Manifest manifest = new Manifest();
+        final Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Bundle-ManifestVersion", "2");
+        attributes.putValue("Bundle-SymbolicName", symbolicName);
+        attributes.putValue("Bundle-Version", "1.0.0");
+        attributes.putValue("Web-ContextPath", contextPath);
+        attributes.putValue("DynamicImport-Package", "*");
+        return manifest;
+    }
+
+    /**
+     * Returns the ids of the Blueprint components which are plain {@code java.util.ArrayList}
+     * beans; Spring beans refer to them.
+     */
+    private List<String> blueprint(final StringBuilder xml) {
+        final List<String> lists = new ArrayList<>();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<blueprint xmlns=\"http://www.osgi.org/xmlns/blueprint/v1.0.0\">\n");
+        int count = 0;
+        for (int i = 0; i < factoryDepth && count < components; i++, count++) {
+            if (i == 0) {
+                xml.append("    <bean id=\"factory0\" class=\"java.lang.StringBuilder\"/>\n");
+            } else {
+                xml.append("    <bean id=\"factory").append(i).append("\" factory-ref=\"factory").append(i - 1)
+                        .append("\" factory-method=\"reverse\"/>\n");
+            }
+        }
+        for (int i = 0; count < components; i++, count++) {
+            if (i % 10 == 9) {
+                xml.append("    <reference id=\"component").append(i)
+                        .append("\" interface=\"java.util.concurrent.Executor\" availability=\"optional\"/>\n");
+            } else {
+                final String type = TYPES[i % TYPES.length];
+                xml.append("    <bean id=\"component").append(i).append("\" class=\"").append(type).append("\"/>\n");
+                if (TYPES[0].equals(type)) {
+                    lists.add("component" + i);
+                }
+            }
+        }
+        xml.append("</blueprint>\n");
+        return lists;
+    }
+
+    private void spring(final StringBuilder xml, final List<String> lists) {
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<beans xmlns=\"http://www.springframework.org/schema/beans\"\n")
+                .append("       xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n")
+                .append("       xsi:schemaLocation=\"http://www.springframework.org/schema/beans ")
+                .append("http://www.springframework.org/schema/beans/spring-beans.xsd\">\n");
+        for (int i = 0; i < springBeans; i++) {
+            xml.append("    <bean id=\"spring").append(i).append("\" class=\"java.util.ArrayList\">");
+            if (!lists.isEmpty()) {
+                xml.append("<constructor-arg ref=\"").append(lists.get(i % lists.size())).append("\"/>");
+            }
+            xml.append("</bean>\n");
+        }
+        xml.append("</beans>\n");
+    }
+
+    /**
+     * Returns the content of a new WAB with the symbolic name and context path specified.
+     */
+    byte[] generate(final String symbolicName, final String contextPath) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final JarOutputStream out = new JarOutputStream(bytes, manifest(symbolicName, contextPath))) {
+            final Set<String> directories = new HashSet<>();
+            final StringBuilder xml = new StringBuilder();
+            final List<String> lists = blueprint(xml);
+            add(out, directories, "OSGI-INF/blueprint/components.xml", xml.toString());
+
+            xml.setLength(0);
+            spring(xml, lists);
+            add(out, directories, "WEB-INF/applicationContext.xml", xml.toString());
+
+            for (int i = 0; i < resources; i++) {
+                add(out, directories, "static/dir" + (i % 50) + "/resource" + i + ".css", "/* " + i + " */\n");
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -56,6 +56,7 @@ public class AnnotationConfigWebApplicationBundleContext extends AnnotationConfi
     @Override
     public void setServletContext(final ServletContext servletContext) {
         resolver.setBundle(getBundle(servletContext));
+        resolver.configure(servletContext);
         super.setServletContext(servletContext);
     }
 }
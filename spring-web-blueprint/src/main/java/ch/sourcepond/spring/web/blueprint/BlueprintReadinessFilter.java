@@ -0,0 +1,72 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint;
+
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static ch.sourcepond.spring.web.blueprint.BlueprintServletContainerInitializer.BLUEPRINT_CONTEXT;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+
+/**
+ * Rejects requests with status 503 (service unavailable) as long as the web application context
+ * is being refreshed asynchronously, and with status 500 if the refresh failed. As soon as the
+ * context has been published, all requests are passed through.
+ */
+class BlueprintReadinessFilter implements Filter {
+    static final String RETRY_AFTER = "Retry-After";
+    static final String RETRY_AFTER_SECONDS = "5";
+    private volatile boolean ready;
+    private volatile FilterConfig config;
+
+    @Override
+    public void init(final FilterConfig filterConfig) {
+        config = filterConfig;
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain)
+            throws IOException, ServletException {
+        if (!ready) {
+            final Object context = config.getServletContext().getAttribute(BLUEPRINT_CONTEXT);
+            if (context instanceof WebApplicationContext) {
+                ready = true;
+            } else {
+                final HttpServletResponse httpResponse = (HttpServletResponse) response;
+                if (context instanceof Exception) {
+                    httpResponse.sendError(SC_INTERNAL_SERVER_ERROR, "Web application context could not be started");
+                } else {
+                    httpResponse.setHeader(RETRY_AFTER, RETRY_AFTER_SECONDS);
+                    httpResponse.sendError(SC_SERVICE_UNAVAILABLE, "Web application context is starting");
+                }
+                return;
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    @Override
+    public void destroy() {
+        // noop
+    }
+}
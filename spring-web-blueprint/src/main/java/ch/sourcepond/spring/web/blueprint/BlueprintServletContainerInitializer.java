@@ -14,11 +14,18 @@ limitations under the License.*/
 package ch.sourcepond.spring.web.blueprint;
 
 import ch.sourcepond.spring.web.blueprint.internal.BlueprintApplicationContext;
+import ch.sourcepond.spring.web.blueprint.internal.LookupMetrics;
+import ch.sourcepond.spring.web.blueprint.internal.LookupMetricsMBean;
 import ch.sourcepond.spring.web.blueprint.internal.ResourceFinderClassLoader;
+import ch.sourcepond.spring.web.blueprint.internal.ResourceResultCache;
+import ch.sourcepond.spring.web.blueprint.internal.StartupMetrics;
+import ch.sourcepond.spring.web.blueprint.internal.StartupMetricsMBean;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleListener;
 import org.osgi.framework.InvalidSyntaxException;
 import org.slf4j.Logger;
+import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.web.context.ConfigurableWebApplicationContext;
 
 import javax.servlet.ServletContainerInitializer;
@@ -26,11 +33,24 @@ import javax.servlet.ServletContext;
 import javax.servlet.ServletContextAttributeEvent;
 import javax.servlet.ServletContextAttributeListener;
 import javax.servlet.ServletException;
+import java.util.Dictionary;
+import java.util.Hashtable;
 import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.Math.max;
+import static java.lang.Runtime.getRuntime;
 import static java.lang.String.format;
 import static java.lang.Thread.currentThread;
 import static java.util.Objects.requireNonNull;
+import static ch.sourcepond.spring.web.blueprint.internal.LookupMetrics.BLUEPRINT_LOOKUP_METRICS;
+import static ch.sourcepond.spring.web.blueprint.internal.StartupMetrics.BLUEPRINT_STARTUP_METRICS;
+import static ch.sourcepond.spring.web.blueprint.internal.StartupMetrics.Phase.REFRESH;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javax.management.ObjectName.quote;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
@@ -64,14 +84,61 @@ public class BlueprintServletContainerInitializer implements ServletContainerIni
     static final String CONTEXT_ATTRIBUTE = "contextAttribute";
     static final String CONFIG_LOCATION_PARAM = "contextConfigLocation";
 
+    /**
+     * Init parameter name to let the web application context be refreshed asynchronously
+     * instead of on the deployment thread of the web extender.
+     */
+    static final String BLUEPRINT_ASYNC_DEPLOYMENT = "blueprintAsyncDeployment";
+    static final String READINESS_FILTER = "blueprintReadinessFilter";
+
+    /**
+     * Service property used by the JMX whiteboard to register a service as MBean.
+     */
+    static final String JMX_OBJECTNAME = "jmx.objectname";
+
+    private static final int MAX_DEPLOYMENT_THREADS = max(2, getRuntime().availableProcessors());
+    private static final AtomicInteger DEPLOYMENT_THREADS = new AtomicInteger();
+    private static final ThreadPoolExecutor DEPLOYMENT_EXECUTOR = new ThreadPoolExecutor(MAX_DEPLOYMENT_THREADS,
+            MAX_DEPLOYMENT_THREADS, 60, SECONDS, new LinkedBlockingQueue<>(), r -> {
+        final Thread thread = new Thread(r, "blueprint-deployment-" + DEPLOYMENT_THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        // Let idle threads die, so that nothing is left behind when the bundle is stopped
+        DEPLOYMENT_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
     static Bundle getBundle(final ServletContext context) {
         return ((BundleContext) requireNonNull(context.getAttribute(OSGI_BUNDLECONTEXT),
                 () -> OSGI_BUNDLECONTEXT + " is not set as attribute on ServletContext")).getBundle();
     }
 
+    private static boolean isAsyncDeployment(final ServletContext ctx) {
+        return parseBoolean(ctx.getInitParameter(BLUEPRINT_ASYNC_DEPLOYMENT));
+    }
+
+    /**
+     * Registers the metrics specified as MBean service, so that they are exposed by a JMX
+     * whiteboard if one is installed. The registration is removed when the bundle is stopped.
+     */
+    private static <T> void registerMetrics(final BundleContext bundleContext, final Class<T> mbeanInterface,
+                                            final T metrics, final String type) {
+        final Bundle bundle = bundleContext.getBundle();
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(JMX_OBJECTNAME, "ch.sourcepond.spring.web.blueprint:type=" + type + ",bundle="
+                + quote(String.valueOf(bundle.getSymbolicName())) + ",id=" + bundle.getBundleId());
+        bundleContext.registerService(mbeanInterface, metrics, props);
+    }
+
     @Override
     public void onStartup(final Set<Class<?>> c, final ServletContext ctx) throws ServletException {
         ctx.addListener(this);
+        if (isAsyncDeployment(ctx)) {
+            ctx.addFilter(READINESS_FILTER, new BlueprintReadinessFilter())
+                    .addMappingForUrlPatterns(null, false, "/*");
+        }
     }
 
     private ConfigurableWebApplicationContext createContext(final Bundle bundle, final String classNameOrNull)
@@ -95,33 +162,106 @@ public class BlueprintServletContainerInitializer implements ServletContainerIni
         if (OSGI_BUNDLECONTEXT.equals(event.getName())) {
             final ServletContext sctx = event.getServletContext();
             final BundleContext bundleContext = (BundleContext) event.getValue();
-            final BlueprintApplicationContext blueprintApplicationContext = new BlueprintApplicationContext(sctx, bundleContext);
+            final StartupMetrics metrics = new StartupMetrics();
+            sctx.setAttribute(BLUEPRINT_STARTUP_METRICS, metrics);
+            registerMetrics(bundleContext, StartupMetricsMBean.class, metrics, "StartupMetrics");
+            final BlueprintApplicationContext blueprintApplicationContext;
+            try {
+                blueprintApplicationContext = new BlueprintApplicationContext(sctx, bundleContext);
+            } catch (final IllegalArgumentException e) {
+                // Invalid context parameter; report it like a failed refresh
+                LOG.error(e.getMessage(), e);
+                sctx.setAttribute(BLUEPRINT_CONTEXT, e);
+                metrics.finish();
+                return;
+            }
+            final LookupMetrics lookupMetrics = blueprintApplicationContext.getLookupMetrics();
+            sctx.setAttribute(BLUEPRINT_LOOKUP_METRICS, lookupMetrics);
+            registerMetrics(bundleContext, LookupMetricsMBean.class, lookupMetrics, "LookupMetrics");
             try {
                 bundleContext.addServiceListener(blueprintApplicationContext, blueprintApplicationContext.getFilter());
             } catch (final InvalidSyntaxException e) {
                 // This should never happen
                 LOG.error(e.getMessage(), e);
             }
+            bundleContext.addBundleListener(ResourceResultCache.shared());
 
-            final ClassLoader ldr = currentThread().getContextClassLoader();
-            currentThread().setContextClassLoader(new ResourceFinderClassLoader(bundleContext));
-            try {
-                final ConfigurableWebApplicationContext webContext = createContext(bundleContext.getBundle(), sctx.getInitParameter(BLUEPRINT_CONTEXT_CLASS));
-                webContext.setServletContext(sctx);
-                webContext.setParent(blueprintApplicationContext);
-                String configLocationParam = sctx.getInitParameter(CONFIG_LOCATION_PARAM);
-                if (configLocationParam != null) {
-                    webContext.setConfigLocation(configLocationParam);
+            if (isAsyncDeployment(sctx)) {
+                DEPLOYMENT_EXECUTOR.execute(() -> refresh(sctx, bundleContext, blueprintApplicationContext, metrics));
+            } else {
+                refresh(sctx, bundleContext, blueprintApplicationContext, metrics);
+            }
+        }
+    }
+
+    /**
+     * Removes the bundle listener specified. If the bundle has already been stopped, the
+     * framework has removed the listener itself.
+     */
+    private static void removeBundleListener(final BundleContext bundleContext, final BundleListener listener) {
+        try {
+            bundleContext.removeBundleListener(listener);
+        } catch (final IllegalStateException e) {
+            LOG.debug("Bundle context is no longer valid, listener has been removed by the framework", e);
+        }
+    }
+
+    /**
+     * Creates and refreshes the web application context, and publishes it on the servlet context
+     * specified. The context class-loader of the current thread is replaced while refreshing.
+     * Recording of the startup metrics specified is finished afterwards.
+     * <p>
+     * The web application context captures the context class-loader as its class-loader, so the
+     * {@link ResourceFinderClassLoader} serves resource lookups for the whole lifetime of the
+     * context. It is therefore kept informed about bundle changes until the context is closed or
+     * the bundle is stopped.
+     */
+    private void refresh(final ServletContext sctx, final BundleContext bundleContext,
+                         final BlueprintApplicationContext blueprintApplicationContext,
+                         final StartupMetrics metrics) {
+        final ClassLoader ldr = currentThread().getContextClassLoader();
+        ResourceFinderClassLoader finder = null;
+        try {
+            finder = new ResourceFinderClassLoader(bundleContext, sctx);
+            bundleContext.addBundleListener(finder);
+            currentThread().setContextClassLoader(finder);
+            final ConfigurableWebApplicationContext webContext = createContext(bundleContext.getBundle(), sctx.getInitParameter(BLUEPRINT_CONTEXT_CLASS));
+            webContext.setServletContext(sctx);
+            webContext.setParent(blueprintApplicationContext);
+            final ResourceFinderClassLoader contextFinder = finder;
+            webContext.addApplicationListener(event -> {
+                // Child contexts publish their events to this context too
+                if (event instanceof ContextClosedEvent && ((ContextClosedEvent) event).getApplicationContext() == webContext) {
+                    removeBundleListener(bundleContext, contextFinder);
                 }
+            });
+            String configLocationParam = sctx.getInitParameter(CONFIG_LOCATION_PARAM);
+            if (configLocationParam != null) {
+                webContext.setConfigLocation(configLocationParam);
+            }
 
+            final long start = metrics.start();
+            try {
                 webContext.refresh();
-                sctx.setAttribute(CONTEXT_ATTRIBUTE, BLUEPRINT_CONTEXT);
-                sctx.setAttribute(BLUEPRINT_CONTEXT, webContext);
-            } catch (final Exception e) {
-                sctx.setAttribute(BLUEPRINT_CONTEXT, e);
             } finally {
-                currentThread().setContextClassLoader(ldr);
+                metrics.stop(REFRESH, start);
+            }
+            sctx.setAttribute(CONTEXT_ATTRIBUTE, BLUEPRINT_CONTEXT);
+            sctx.setAttribute(BLUEPRINT_CONTEXT, webContext);
+        } catch (final Exception e) {
+            LOG.error(e.getMessage(), e);
+            sctx.setAttribute(BLUEPRINT_CONTEXT, e);
+            if (finder != null) {
+                // No context is left which could use the finder
+                removeBundleListener(bundleContext, finder);
+            }
+        } finally {
+            currentThread().setContextClassLoader(ldr);
+            if (finder != null) {
+                LOG.debug("Negative resource lookup cache hit rate during refresh: {}", finder.getNegativeCacheHitRate());
             }
+            metrics.finish();
+            LOG.info("Deployment of {} finished: {}", bundleContext.getBundle().getSymbolicName(), metrics);
         }
     }
 
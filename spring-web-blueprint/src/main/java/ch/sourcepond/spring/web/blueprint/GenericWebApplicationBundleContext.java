@@ -71,6 +71,7 @@ public class GenericWebApplicationBundleContext extends GenericWebApplicationCon
     @Override
     public void setServletContext(final ServletContext servletContext) {
         resolver.setBundle(getBundle(servletContext));
+        resolver.configure(servletContext);
         super.setServletContext(servletContext);
     }
 }
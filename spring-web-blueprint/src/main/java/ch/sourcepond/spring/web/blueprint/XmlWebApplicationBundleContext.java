@@ -54,6 +54,7 @@ public class XmlWebApplicationBundleContext extends XmlWebApplicationContext {
     @Override
     public void setServletContext(final ServletContext servletContext) {
         resolver.setBundle(getBundle(servletContext));
+        resolver.configure(servletContext);
         super.setServletContext(servletContext);
     }
 }
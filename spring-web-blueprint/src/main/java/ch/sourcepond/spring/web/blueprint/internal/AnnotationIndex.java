@@ -0,0 +1,69 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static ch.sourcepond.spring.web.blueprint.internal.BlueprintApplicationContext.EMPTY;
+import static org.springframework.core.annotation.AnnotationUtils.findAnnotation;
+
+/**
+ * Index of the annotations present on the resolved component types of a {@link TypeIndex}.
+ * Annotations are searched on the type, its interfaces, super-classes and meta-annotations.
+ * Components are never instantiated; components whose type could not be resolved through
+ * their metadata are not considered. The returned arrays are shared and must not be modified
+ * by the caller.
+ */
+final class AnnotationIndex {
+    private final ConcurrentMap<Class<? extends Annotation>, String[]> namesByAnnotation = new ConcurrentHashMap<>();
+    private final TypeIndex types;
+
+    AnnotationIndex(final TypeIndex types) {
+        this.types = types;
+    }
+
+    /**
+     * Returns the annotation of the type specified found on the component type, or {@code null}
+     * if no such annotation is present or the component type is unknown.
+     */
+    <A extends Annotation> A findAnnotationOnBean(final String id, final Class<A> annotationType) {
+        final Class<?> type = types.getType(id);
+        return type == null ? null : findAnnotation(type, annotationType);
+    }
+
+    /**
+     * Returns the names of all components whose type carries the annotation specified.
+     */
+    String[] getBeanNamesForAnnotation(final Class<? extends Annotation> annotationType) {
+        String[] matches = namesByAnnotation.get(annotationType);
+        if (matches == null) {
+            final List<String> found = new ArrayList<>();
+            for (final String id : types.getBeanNamesForType(null)) {
+                if (findAnnotationOnBean(id, annotationType) != null) {
+                    found.add(id);
+                }
+            }
+            matches = found.toArray(EMPTY);
+            final String[] previous = namesByAnnotation.putIfAbsent(annotationType, matches);
+            if (previous != null) {
+                matches = previous;
+            }
+        }
+        return matches;
+    }
+}
@@ -24,9 +24,6 @@ import org.osgi.service.blueprint.container.BlueprintContainer;
 import org.osgi.service.blueprint.container.NoSuchComponentException;
 import org.osgi.service.blueprint.reflect.BeanMetadata;
 import org.osgi.service.blueprint.reflect.ComponentMetadata;
-import org.osgi.service.blueprint.reflect.RefMetadata;
-import org.osgi.service.blueprint.reflect.ServiceReferenceMetadata;
-import org.osgi.service.blueprint.reflect.Target;
 import org.slf4j.Logger;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.PropertyEditorRegistrar;
@@ -35,7 +32,6 @@ import org.springframework.beans.TypeConverter;
 import org.springframework.beans.factory.BeanDefinitionStoreException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanNotOfRequiredTypeException;
-import org.springframework.beans.factory.CannotLoadBeanClassException;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.beans.factory.NoUniqueBeanDefinitionException;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
@@ -68,17 +64,31 @@ import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.time.Instant;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import static ch.sourcepond.spring.web.blueprint.internal.ContainerGeneration.effectiveScope;
+import static ch.sourcepond.spring.web.blueprint.internal.LookupMetrics.Operation.CONTAINS_BEAN;
+import static ch.sourcepond.spring.web.blueprint.internal.LookupMetrics.Operation.GET_BEAN;
+import static ch.sourcepond.spring.web.blueprint.internal.LookupMetrics.Operation.GET_BEANS_OF_TYPE;
+import static ch.sourcepond.spring.web.blueprint.internal.LookupMetrics.Operation.GET_BEAN_NAMES_FOR_TYPE;
+import static ch.sourcepond.spring.web.blueprint.internal.LookupMetrics.Operation.GET_RESOURCES;
 import static ch.sourcepond.spring.web.blueprint.internal.ResourceFinderClassLoader.getBundleClassLoader;
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.String.format;
 import static java.lang.Thread.currentThread;
 import static java.time.Instant.now;
-import static java.util.Collections.emptyMap;
+import static java.util.Arrays.asList;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.osgi.framework.ServiceEvent.MODIFIED;
 import static org.osgi.framework.ServiceEvent.MODIFIED_ENDMATCH;
 import static org.osgi.framework.ServiceEvent.REGISTERED;
 import static org.osgi.framework.ServiceEvent.UNREGISTERING;
@@ -116,18 +126,42 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
      */
     static final String OSGI_BLUEPRINT_CONTAINER_VERSION = "osgi.blueprint.container.version";
 
+    /**
+     * Init parameter name to declare the maximum time in milliseconds to wait for the
+     * {@link BlueprintContainer} to become available. If not set or not positive, callers
+     * wait until the container is available or has been shutdown.
+     */
+    static final String BLUEPRINT_CONTAINER_TIMEOUT = "blueprintContainerTimeout";
+
+    /**
+     * Init parameter name to enable caching of singleton component instances. If set to
+     * {@code true}, singletons are requested from the {@link BlueprintContainer} only once
+     * per container generation.
+     */
+    static final String BLUEPRINT_SINGLETON_CACHE = "blueprintSingletonCache";
+
+    /**
+     * Init parameter name to enable the recording of {@link LookupMetrics} from the start.
+     * Recording can be switched on and off at runtime through the metrics in any case.
+     */
+    static final String BLUEPRINT_LOOKUP_METRICS_ENABLED = "blueprintLookupMetricsEnabled";
+
     private final Instant startTime = now();
     private final ResourcePatternResolver resolver;
     private final ServletContext servletContext;
     private final Environment environment;
     private final BundleContext bundleContext;
+    private final Bundle bundle;
     private final String filter;
-    private boolean destroyed;
-    private volatile MessageSource source;
+    private final long containerTimeout;
+    private final boolean singletonCache;
+    private final BlueprintContainerHolder containerHolder;
+    private final StartupMetrics metrics;
+    private final LookupMetrics lookupMetrics;
+    private final Object singletonMutex = new Object();
     private volatile ClassLoader classLoader;
     private volatile ClassLoader tempClassLoader;
-    private volatile BlueprintContainer container;
-    private volatile Set<String> componentIds;
+    private final LongAdder avoidedInstantiations = new LongAdder();
 
     /**
      * Creates a new instance of this class. The instance will wait until
@@ -144,7 +178,9 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
         environment.initPropertySources(servletContext, null);
         this.environment = environment;
         this.bundleContext = requireNonNull(bundleContext, "Bundle-Context is null");
-        final Bundle bundle = bundleContext.getBundle();
+        // Keep the bundle; the bundle context becomes invalid when the bundle is stopped,
+        // before the unregistration of the container is delivered.
+        bundle = bundleContext.getBundle();
         filter = "(&(" + Constants.OBJECTCLASS + "="
                 + BlueprintContainer.class.getName() + ")("
                 + OSGI_BLUEPRINT_CONTAINER_SYMBOLIC_NAME + "="
@@ -152,20 +188,50 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
                 + OSGI_BLUEPRINT_CONTAINER_VERSION + "="
                 + bundle.getVersion() + "))";
         classLoader = getBundleClassLoader(bundle);
+        metrics = StartupMetrics.of(servletContext);
+        containerHolder = new BlueprintContainerHolder(bundle, metrics);
+        containerTimeout = parseTimeout(servletContext.getInitParameter(BLUEPRINT_CONTAINER_TIMEOUT));
+        singletonCache = parseBoolean(servletContext.getInitParameter(BLUEPRINT_SINGLETON_CACHE));
+        lookupMetrics = new LookupMetrics(parseBoolean(servletContext.getInitParameter(BLUEPRINT_LOOKUP_METRICS_ENABLED)));
 
         final BundleResourcePatternResolver resolver = new BundleResourcePatternResolver(new ServletContextResourcePatternResolver(this));
         resolver.setBundle(bundle);
+        resolver.configure(servletContext);
         this.resolver = resolver;
     }
 
+    /**
+     * Parses the value of {@link #BLUEPRINT_CONTAINER_TIMEOUT}; {@code null} means no timeout.
+     *
+     * @throws IllegalArgumentException Thrown, if the value is not a number.
+     */
+    private static long parseTimeout(final String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(format("Invalid value of %s: %s is not a number of milliseconds",
+                    BLUEPRINT_CONTAINER_TIMEOUT, value), e);
+        }
+    }
+
     private Bundle getBundle() {
-        return bundleContext.getBundle();
+        return bundle;
     }
 
     public String getFilter() {
         return filter;
     }
 
+    /**
+     * Returns the metrics of the lookups served by this context.
+     */
+    public LookupMetrics getLookupMetrics() {
+        return lookupMetrics;
+    }
+
     private BlueprintContainer findExistingBlueprintContainer() {
         BlueprintContainer container = null;
         try {
@@ -180,38 +246,81 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
         return container;
     }
 
+    /**
+     * Returns the current container generation; waits until a container is available if
+     * necessary. Callers which need to access the container more than once should obtain
+     * the generation once and use it throughout, so that they are not affected by a
+     * concurrent re-registration of the container.
+     */
+    private ContainerGeneration getGeneration() {
+        final ContainerGeneration generation = containerHolder.current();
+        return generation == null ? awaitGeneration() : generation;
+    }
+
     private BlueprintContainer getContainer() {
-        if (container == null) {
-            synchronized (this) {
-                if (container == null) {
-                    container = findExistingBlueprintContainer();
-                    try {
-                        while (container == null && !destroyed) {
-                            wait();
-                        }
-                    } catch (final InterruptedException e) {
-                        currentThread().interrupt();
-                        throw new BeanDefinitionStoreException("Wait for BlueprintContainer interrupted", e);
-                    }
-
-                    if (container == null) {
-                        throw new BeanDefinitionStoreException(BLUEPRINT_CONTAINER_CONTAINER_HAS_BEEN_SHUTDOWN);
-                    }
-                }
+        return getGeneration().getContainer();
+    }
+
+    private ContainerGeneration lookupGeneration() {
+        final BlueprintContainer existing = findExistingBlueprintContainer();
+        if (existing != null) {
+            blueprintContainerRegistered(existing);
+            return containerHolder.current();
+        }
+        return null;
+    }
+
+    private ContainerGeneration awaitGeneration() {
+        final ContainerGeneration existing = lookupGeneration();
+        if (existing != null) {
+            return existing;
+        }
+
+        final long start = metrics.start();
+        try {
+            if (containerTimeout > 0) {
+                return containerHolder.state().get(containerTimeout, MILLISECONDS);
             }
+            return containerHolder.state().get();
+        } catch (final InterruptedException e) {
+            currentThread().interrupt();
+            throw new BeanDefinitionStoreException("Wait for BlueprintContainer interrupted", e);
+        } catch (final ExecutionException e) {
+            throw new BeanDefinitionStoreException(BLUEPRINT_CONTAINER_CONTAINER_HAS_BEEN_SHUTDOWN);
+        } catch (final TimeoutException e) {
+            throw new BeanDefinitionStoreException(format("No BlueprintContainer matching %s available within %d ms",
+                    filter, containerTimeout), e);
+        } finally {
+            metrics.stop(StartupMetrics.Phase.CONTAINER_WAIT, start);
         }
-        return container;
     }
 
-    private synchronized void blueprintContainerRegistered(final ServiceReference<?> pReference) {
-        container = (BlueprintContainer) bundleContext.getService(pReference);
-        notifyAll();
+    /**
+     * Returns a stage which completes as soon as the {@link BlueprintContainer} associated with
+     * the bundle of this context is available. If the container has been shutdown, the stage
+     * completes exceptionally. In contrast to the bean lookup methods, this method never blocks
+     * the calling thread.
+     *
+     * @return Stage, never {@code null}
+     */
+    public CompletionStage<BlueprintContainer> whenContainerAvailable() {
+        if (containerHolder.current() == null) {
+            lookupGeneration();
+        }
+        // Return a dependent stage so that callers cannot complete the internal state
+        return containerHolder.state().thenApply(ContainerGeneration::getContainer);
     }
 
-    private synchronized void blueprintContainerUnregistered() {
-        container = null;
-        destroyed = true;
-        notifyAll();
+    private void blueprintContainerRegistered(final BlueprintContainer container) {
+        final ContainerGeneration generation = containerHolder.register(container);
+        if (generation != null) {
+            LOG.info("BlueprintContainer generation {} registered for {}", generation.getNumber(), getBundle());
+        }
+    }
+
+    private void blueprintContainerUnregistered() {
+        containerHolder.unregister();
+        LOG.info("BlueprintContainer unregistered for {}", getBundle());
     }
 
     @Override
@@ -223,7 +332,11 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
                 break;
             }
             case REGISTERED: {
-                blueprintContainerRegistered(serviceEvent.getServiceReference());
+                blueprintContainerRegistered((BlueprintContainer) bundleContext.getService(serviceEvent.getServiceReference()));
+                break;
+            }
+            case MODIFIED: {
+                containerHolder.renew();
                 break;
             }
             default: {
@@ -232,30 +345,19 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
         }
     }
 
-    private Set<String> getFilteredComponentIds() {
-        Set<String> ids = componentIds;
-        if (ids == null) {
-            final BlueprintContainer container = getContainer();
-            ids = new HashSet<>(container.getComponentIds());
-            ids.removeIf(id -> isIncompatible(container.getComponentMetadata(id)));
-            componentIds = ids;
-        }
-        return ids;
-    }
-
     @Override
     public boolean containsBeanDefinition(String beanName) {
-        return getFilteredComponentIds().contains(beanName);
+        return getGeneration().getSnapshot().contains(beanName);
     }
 
     @Override
     public int getBeanDefinitionCount() {
-        return getFilteredComponentIds().size();
+        return getGeneration().getSnapshot().getNames().length;
     }
 
     @Override
     public String[] getBeanDefinitionNames() {
-        return getFilteredComponentIds().toArray(EMPTY);
+        return getGeneration().getSnapshot().getNames();
     }
 
     @Override
@@ -269,18 +371,12 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
 
     @Override
     public String[] getBeanNamesForType(Class<?> type, boolean includeNonSingletons, boolean allowEagerInit) {
-        final Set<String> beanNames = new HashSet<>();
-        for (final String id : getFilteredComponentIds()) {
-            try {
-                final Class<?> cl = findType(findMetadata(id));
-                if (type.isAssignableFrom(cl)) {
-                    beanNames.add(id);
-                }
-            } catch (final Exception e) {
-                LOG.warn(e.getMessage(), e);
-            }
+        final long start = lookupMetrics.start();
+        try {
+            return getGeneration().getTypeIndex().getBeanNamesForType(type);
+        } finally {
+            lookupMetrics.record(GET_BEAN_NAMES_FOR_TYPE, start);
         }
-        return beanNames.toArray(EMPTY);
     }
 
     @Override
@@ -290,38 +386,58 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
 
     @Override
     public <T> Map<String, T> getBeansOfType(Class<T> type, boolean includeNonSingletons, boolean allowEagerInit) throws BeansException {
-        final Map<String, T> beans = new HashMap<>();
-        for (final String name : getBeanNamesForType(type)) {
-            beans.put(name, getBean(name, type));
+        final long start = lookupMetrics.start();
+        try {
+            final ContainerGeneration generation = getGeneration();
+            final Map<String, T> beans = new HashMap<>();
+            for (final String name : generation.getTypeIndex().getBeanNamesForType(type)) {
+                beans.put(name, getBean(generation, name, type));
+            }
+            return beans;
+        } finally {
+            lookupMetrics.record(GET_BEANS_OF_TYPE, start);
         }
-        return beans;
     }
 
     @Override
     public String[] getBeanNamesForAnnotation(Class<? extends Annotation> annotationType) {
-        // Not supported by BlueprintContainer
-        return EMPTY;
+        return getGeneration().getAnnotationIndex().getBeanNamesForAnnotation(annotationType);
     }
 
     @Override
     public Map<String, Object> getBeansWithAnnotation(Class<? extends Annotation> annotationType) throws BeansException {
-        // Not supported by BlueprintContainer
-        return emptyMap();
+        final ContainerGeneration generation = getGeneration();
+        final Map<String, Object> beans = new LinkedHashMap<>();
+        for (final String name : generation.getAnnotationIndex().getBeanNamesForAnnotation(annotationType)) {
+            beans.put(name, getBean(generation, name));
+        }
+        return beans;
     }
 
     @Override
     public <A extends Annotation> A findAnnotationOnBean(String beanName, Class<A> annotationType) throws NoSuchBeanDefinitionException {
-        // Throw NoSuchBeanDefinitionException if bean does not exist
-        getBean(beanName);
+        final ContainerGeneration generation = getGeneration();
 
-        // Not supported by BlueprintContainer
-        return null;
+        // Throw NoSuchBeanDefinitionException if bean does not exist
+        if (!generation.getSnapshot().containsComponent(beanName)) {
+            throw new NoSuchBeanDefinitionException(beanName);
+        }
+        return generation.getAnnotationIndex().findAnnotationOnBean(beanName, annotationType);
     }
 
-    @Override
-    public Object getBean(final String s) throws BeansException {
+    private Object getBean(final ContainerGeneration generation, final String s) throws BeansException {
+        if (singletonCache) {
+            final Object cached = generation.getCachedSingleton(s);
+            if (cached != null) {
+                return cached;
+            }
+        }
         try {
-            return getContainer().getComponentInstance(s);
+            final Object instance = generation.getContainer().getComponentInstance(s);
+            if (singletonCache) {
+                generation.cacheIfSingleton(s, instance);
+            }
+            return instance;
         } catch (final NoSuchComponentException e) {
             final NoSuchBeanDefinitionException nsbe = new NoSuchBeanDefinitionException(
                     s);
@@ -330,10 +446,29 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
         }
     }
 
+    @Override
+    public Object getBean(final String s) throws BeansException {
+        final long start = lookupMetrics.start();
+        try {
+            return getBean(getGeneration(), s);
+        } finally {
+            lookupMetrics.record(GET_BEAN, s, start);
+        }
+    }
+
     @Override
     public <T> T getBean(final String s, final Class<T> aClass) throws BeansException {
+        final long start = lookupMetrics.start();
+        try {
+            return getBean(getGeneration(), s, aClass);
+        } finally {
+            lookupMetrics.record(GET_BEAN, s, start);
+        }
+    }
+
+    private <T> T getBean(final ContainerGeneration generation, final String s, final Class<T> aClass) throws BeansException {
         // Get instance; never null
-        final Object instance = getBean(s);
+        final Object instance = getBean(generation, s);
 
         if (aClass != null
                 && !aClass.isAssignableFrom(instance.getClass())) {
@@ -343,29 +478,62 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
         return (T) instance;
     }
 
+    /**
+     * Returns the number of component instantiations which have been avoided by
+     * {@link #getBean(Class)} because the component type could be determined through its
+     * metadata.
+     */
+    public long getAvoidedInstantiations() {
+        return avoidedInstantiations.sum();
+    }
+
     @Override
     public <T> T getBean(final Class<T> aClass) throws BeansException {
+        final long start = lookupMetrics.start();
+        try {
+            return getBeanOfType(aClass);
+        } finally {
+            lookupMetrics.record(GET_BEAN, start);
+        }
+    }
+
+    private <T> T getBeanOfType(final Class<T> aClass) throws BeansException {
         requireNonNull(aClass, "Class is null");
-        final BlueprintContainer container = getContainer();
-        final Set<String> ids = getFilteredComponentIds();
-        final Map<String, Object> beans = new HashMap<>(ids.size());
-        ids.forEach(id -> beans.put(id, getContainer().getComponentInstance(id)));
-
-        for (final Iterator<Object> it = beans.values().iterator(); it.hasNext(); ) {
-            if (!aClass.isAssignableFrom(it.next().getClass())) {
-                it.remove();
+        final ContainerGeneration generation = getGeneration();
+        final TypeIndex index = generation.getTypeIndex();
+        final Set<String> names = new LinkedHashSet<>(asList(index.getBeanNamesForType(aClass)));
+
+        // Components whose type is not known through their metadata must be
+        // instantiated in order to determine whether they match.
+        final Map<String, Object> beans = new HashMap<>();
+        for (final String id : index.getUnresolvedNames()) {
+            final Object bean = getBean(generation, id);
+            if (aClass.isAssignableFrom(bean.getClass())) {
+                names.add(id);
+                beans.put(id, bean);
             }
         }
+        // Every unresolved component has been instantiated, whether it matched or not
+        int instantiations = index.getUnresolvedNames().length;
 
-        if (beans.isEmpty()) {
+        if (names.isEmpty()) {
+            avoidedInstantiations.add(index.size() - instantiations);
             throw new NoSuchBeanDefinitionException(aClass);
         }
 
-        if (beans.size() > 1) {
-            throw new NoUniqueBeanDefinitionException(aClass, beans.keySet());
+        if (names.size() > 1) {
+            avoidedInstantiations.add(index.size() - instantiations);
+            throw new NoUniqueBeanDefinitionException(aClass, names);
         }
 
-        return (T) beans.values().iterator().next();
+        final String name = names.iterator().next();
+        Object bean = beans.get(name);
+        if (bean == null) {
+            bean = getBean(generation, name);
+            instantiations++;
+        }
+        avoidedInstantiations.add(index.size() - instantiations);
+        return (T) bean;
     }
 
     @Override
@@ -384,21 +552,20 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
 
     @Override
     public boolean containsBean(final String s) {
+        // Answered from the snapshot; the component is not instantiated
+        final long start = lookupMetrics.start();
         try {
-            getContainer().getComponentInstance(s);
-            return true;
-        } catch (final NoSuchComponentException e) {
-            // noop
-            LOG.trace(e.getMessage(), e);
+            return getGeneration().getSnapshot().containsComponent(s);
+        } finally {
+            lookupMetrics.record(CONTAINS_BEAN, s, start);
         }
-        return false;
     }
 
     private boolean hasScope(final String pScope, final String s) throws NoSuchBeanDefinitionException {
         boolean singleton;
         try {
             final ComponentMetadata m = getContainer().getComponentMetadata(s);
-            singleton = (m instanceof BeanMetadata) && pScope.equals(((BeanMetadata) m).getScope());
+            singleton = (m instanceof BeanMetadata) && pScope.equals(effectiveScope((BeanMetadata) m));
         } catch (final NoSuchComponentException e) {
             throw new NoSuchBeanDefinitionException(s);
         }
@@ -416,20 +583,37 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
         return hasScope(SCOPE_PROTOTYPE, s);
     }
 
+    /**
+     * Determines the type of the component specified through its metadata. Only if the type
+     * cannot be determined this way, the component will be instantiated and the class of the
+     * instance is returned.
+     */
+    private Class<?> predictType(final String s) throws NoSuchBeanDefinitionException {
+        final ContainerGeneration generation = getGeneration();
+        final ComponentSnapshot snapshot = generation.getSnapshot();
+        if (!snapshot.contains(s) && snapshot.containsComponent(s)) {
+            // Environment components like blueprintBundleContext have neither bean nor
+            // reference metadata; only their instance can tell the type.
+            return getBean(generation, s).getClass();
+        }
+        final Class<?> type = generation.resolve(s).getOrNull();
+        return type == null ? getBean(generation, s).getClass() : type;
+    }
+
     @Override
     public boolean isTypeMatch(final String s, final ResolvableType resolvableType) throws NoSuchBeanDefinitionException {
-        return resolvableType.isAssignableFrom(getBean(s).getClass());
+        return resolvableType.isAssignableFrom(predictType(s));
     }
 
     @Override
     public boolean isTypeMatch(final String s, final Class<?> aClass) throws NoSuchBeanDefinitionException {
-        return aClass.isAssignableFrom(getBean(s).getClass());
+        return aClass.isAssignableFrom(predictType(s));
     }
 
     @Override
     public Class<?> getType(final String s) throws NoSuchBeanDefinitionException {
         try {
-            return findType(findMetadata(s));
+            return getGeneration().resolveType(s);
         } catch (final ClassNotFoundException | NoSuchMethodException e) {
             final NoSuchBeanDefinitionException ex = new NoSuchBeanDefinitionException(s);
             ex.initCause(e);
@@ -437,112 +621,6 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
         }
     }
 
-    private boolean isIncompatible(final ComponentMetadata metadata) {
-        return !(metadata instanceof BeanMetadata) && !(metadata instanceof ServiceReferenceMetadata);
-    }
-
-    private ComponentMetadata findMetadata(final String id) {
-        try {
-            final ComponentMetadata metadata = getContainer().getComponentMetadata(id);
-
-            if (isIncompatible(metadata)) {
-                throw new NoSuchComponentException("Actual metadata-class "
-                        + metadata.getClass() + " is not assignable from "
-                        + BeanMetadata.class.getName() + " or "
-                        + ServiceReferenceMetadata.class, id);
-            }
-
-            return metadata;
-        } catch (final NoSuchComponentException e) {
-            final NoSuchBeanDefinitionException nsbe = new NoSuchBeanDefinitionException(
-                    id);
-            nsbe.initCause(e);
-            throw nsbe;
-        }
-    }
-
-    private String getComponentId(final Target target) {
-        final String componentId;
-        if (target instanceof ComponentMetadata) {
-            componentId = ((ComponentMetadata) target).getId();
-        } else { // It can only be a RefMetadata
-            componentId = ((RefMetadata) target).getComponentId();
-        }
-        return componentId;
-    }
-
-    private Class<?> findType(final ComponentMetadata metadata) throws ClassNotFoundException, NoSuchMethodException {
-        assert metadata != null : "metadata cannot be null";
-
-        Class<?> clazz = null;
-
-        if (metadata instanceof BeanMetadata) {
-            final BeanMetadata beanMetadata = (BeanMetadata) metadata;
-            final String factoryMethodNameOrNull = beanMetadata
-                    .getFactoryMethod();
-            final String className = beanMetadata.getClassName();
-
-            // Class name can be null when a factory component was used to construct the bean.
-            if (className == null) {
-
-                // We need a factory-method name at this point; throw an exception if not so.
-                if (factoryMethodNameOrNull == null) {
-                    throw new IllegalStateException(
-                            "Invalid metadata: class-name nor factory-method is provided! "
-                                    + metadata);
-                }
-
-                // Get the metadata of the factory component and validate it.
-                final Target factoryComponent = beanMetadata
-                        .getFactoryComponent();
-                if (factoryComponent == null) {
-                    throw new IllegalStateException(
-                            "No class-name nor a factory component has been specified!");
-                }
-
-                final ComponentMetadata factoryComponentMetadata = findMetadata(getComponentId(factoryComponent));
-
-                // The factory-component itself could also be constructed through
-                // another factory. Because this, we need to call this method
-                // recursively
-                final Class<?> factoryComponentClass = findType(factoryComponentMetadata);
-
-                // Almost at the end; what we finally need is the return type of the factory-method
-                clazz = factoryComponentClass.getMethod(factoryMethodNameOrNull).getReturnType();
-            } else if (factoryMethodNameOrNull != null) {
-                // A static factory-method should be defined; get its return type.
-                clazz = determineFactoryReturnType(beanMetadata);
-            } else {
-                // Simply load the class with the class-name specified
-                clazz = loadClass(className);
-            }
-        } else if (metadata instanceof ServiceReferenceMetadata) {
-            final ServiceReferenceMetadata referenceMetadata = (ServiceReferenceMetadata) metadata;
-
-            // getId() can be null when the reference-element is nested; skip it
-            // because we must not consider nested elements!
-            if (referenceMetadata.getInterface() != null) {
-                clazz = loadClass(referenceMetadata.getInterface());
-            }
-        } else {
-            throw new CannotLoadBeanClassException(bundleContext.getBundle().toString(),
-                    metadata.getId(), metadata.toString(),
-                    new ClassNotFoundException());
-        }
-
-        return clazz;
-    }
-
-    private Class<?> determineFactoryReturnType(final BeanMetadata metadata) throws
-            ClassNotFoundException, NoSuchMethodException {
-        final Class<?> factoryClass = loadClass(metadata.getClassName());
-        return factoryClass.getMethod(metadata.getFactoryMethod()).getReturnType();
-    }
-
-    private Class<?> loadClass(final String className) throws ClassNotFoundException {
-        return bundleContext.getBundle().loadClass(className);
-    }
-
     @Override
     public String[] getAliases(final String s) {
         return EMPTY;
@@ -762,22 +840,22 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
 
     @Override
     public boolean containsSingleton(final String beanName) {
-        return getFilteredComponentIds().contains(beanName);
+        return getGeneration().getSnapshot().contains(beanName);
     }
 
     @Override
     public String[] getSingletonNames() {
-        return getFilteredComponentIds().toArray(new String[0]);
+        return getGeneration().getSnapshot().getNames();
     }
 
     @Override
     public int getSingletonCount() {
-        return getFilteredComponentIds().size();
+        return getGeneration().getSnapshot().getNames().length;
     }
 
     @Override
     public Object getSingletonMutex() {
-        return this;
+        return singletonMutex;
     }
 
 
@@ -823,14 +901,16 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
     }
 
     private MessageSource getMessageSource() {
-        MessageSource source = this.source;
+        // The message source is a component of the container, so it is cached per generation
+        final ContainerGeneration generation = getGeneration();
+        MessageSource source = generation.getMessageSource();
         if (source == null) {
             try {
-                source = getBean(MESSAGE_SOURCE_BEAN_NAME, MessageSource.class);
+                source = getBean(generation, MESSAGE_SOURCE_BEAN_NAME, MessageSource.class);
             } catch (final NoSuchBeanDefinitionException e) {
                 source = new DelegatingMessageSource();
             }
-            this.source = source;
+            generation.setMessageSource(source);
         }
         return source;
     }
@@ -857,7 +937,12 @@ public final class BlueprintApplicationContext implements WebApplicationContext,
 
     @Override
     public Resource[] getResources(String locationPattern) throws IOException {
-        return resolver.getResources(locationPattern);
+        final long start = lookupMetrics.start();
+        try {
+            return resolver.getResources(locationPattern);
+        } finally {
+            lookupMetrics.record(GET_RESOURCES, start);
+        }
     }
 
     @Override
@@ -0,0 +1,114 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.osgi.framework.Bundle;
+import org.osgi.service.blueprint.container.BlueprintContainer;
+
+import java.util.concurrent.CompletableFuture;
+
+import static ch.sourcepond.spring.web.blueprint.internal.BlueprintApplicationContext.BLUEPRINT_CONTAINER_CONTAINER_HAS_BEEN_SHUTDOWN;
+
+/**
+ * Holds the {@link ContainerGeneration} of the currently available {@link BlueprintContainer}.
+ * Readers access the current generation through a single volatile read and never lock; threads
+ * which need to wait for a container use the {@link CompletableFuture} returned by {@link #state()}.
+ * Writers are serialized through a private lock which is not shared with anything else.
+ */
+final class BlueprintContainerHolder {
+    private final Object writeLock = new Object();
+    private final Bundle bundle;
+    private final StartupMetrics metrics;
+    private long generations;
+    private volatile ContainerGeneration current;
+    private volatile CompletableFuture<ContainerGeneration> state = new CompletableFuture<>();
+
+    BlueprintContainerHolder(final Bundle bundle) {
+        this(bundle, StartupMetrics.DISABLED);
+    }
+
+    BlueprintContainerHolder(final Bundle bundle, final StartupMetrics metrics) {
+        this.bundle = bundle;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the current generation, or {@code null} if no container is available.
+     */
+    ContainerGeneration current() {
+        return current;
+    }
+
+    /**
+     * Returns the future which is or will be completed with the current generation. If the
+     * container has been shutdown, the future is completed exceptionally.
+     */
+    CompletableFuture<ContainerGeneration> state() {
+        return state;
+    }
+
+    private void install(final ContainerGeneration generation) {
+        current = generation;
+        if (!state.complete(generation)) {
+            state = CompletableFuture.completedFuture(generation);
+        }
+    }
+
+    /**
+     * Makes the container specified available as a new generation and releases all waiting
+     * threads. Threads which still use the previous generation are not affected.
+     *
+     * @return The new generation, or {@code null} if the container specified was already the
+     * current one.
+     */
+    ContainerGeneration register(final BlueprintContainer container) {
+        synchronized (writeLock) {
+            if (current != null && current.getContainer() == container) {
+                return null;
+            }
+            final ContainerGeneration generation = new ContainerGeneration(bundle, container, metrics, ++generations);
+            install(generation);
+            return generation;
+        }
+    }
+
+    /**
+     * Replaces the current generation with a new one for the same container, so that all
+     * information derived from the container is determined again. Does nothing if no
+     * container is available.
+     */
+    void renew() {
+        synchronized (writeLock) {
+            if (current != null) {
+                install(new ContainerGeneration(bundle, current.getContainer(), metrics, ++generations));
+            }
+        }
+    }
+
+    /**
+     * Removes the current container. All waiting threads and all threads which
+     * wait afterwards will fail until a new container is registered.
+     */
+    void unregister() {
+        synchronized (writeLock) {
+            current = null;
+            final IllegalStateException shutdown = new IllegalStateException(BLUEPRINT_CONTAINER_CONTAINER_HAS_BEEN_SHUTDOWN);
+            if (!state.completeExceptionally(shutdown)) {
+                final CompletableFuture<ContainerGeneration> failed = new CompletableFuture<>();
+                failed.completeExceptionally(shutdown);
+                state = failed;
+            }
+        }
+    }
+}
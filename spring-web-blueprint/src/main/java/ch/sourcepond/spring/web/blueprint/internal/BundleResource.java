@@ -0,0 +1,113 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.osgi.framework.Bundle;
+import org.springframework.core.io.AbstractFileResolvingResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+import org.springframework.util.StringUtils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+
+import static java.lang.String.format;
+import static org.springframework.util.ResourceUtils.useCachesIfNecessary;
+
+/**
+ * Resource which has been listed by an {@link InternalResolver}. Only the bundle, the resolver and
+ * the path are held; the URL is determined on first access. Because the resource has been listed,
+ * it is assumed to exist and to be readable.
+ */
+final class BundleResource extends AbstractFileResolvingResource {
+    private final Bundle bundle;
+    private final InternalResolver<?> resolver;
+    private final String path;
+    private volatile URL url;
+
+    BundleResource(final Bundle bundle, final InternalResolver<?> resolver, final String path) {
+        this.bundle = bundle;
+        this.resolver = resolver;
+        this.path = path;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    @Override
+    public URL getURL() throws IOException {
+        URL resolved = url;
+        if (resolved == null) {
+            resolved = resolver.doResolveResource(bundle, path);
+            if (resolved == null) {
+                throw new FileNotFoundException(format("%s cannot be resolved to URL", getDescription()));
+            }
+            url = resolved;
+        }
+        return resolved;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        final URLConnection con = getURL().openConnection();
+        useCachesIfNecessary(con);
+        return con.getInputStream();
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public boolean isReadable() {
+        return true;
+    }
+
+    @Override
+    public Resource createRelative(final String relativePath) throws IOException {
+        return new UrlResource(new URL(getURL(), relativePath.startsWith("/") ? relativePath.substring(1) : relativePath));
+    }
+
+    @Override
+    public String getFilename() {
+        return StringUtils.getFilename(path);
+    }
+
+    @Override
+    public String getDescription() {
+        return format("bundle resource [%s] of %s", path, bundle.getSymbolicName());
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final BundleResource other = (BundleResource) o;
+        return resolver == other.resolver && bundle.getBundleId() == other.bundle.getBundleId() && path.equals(other.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(bundle.getBundleId()) + path.hashCode();
+    }
+}
@@ -20,14 +20,26 @@ import org.springframework.core.io.UrlResource;
 import org.springframework.core.io.support.ResourcePatternResolver;
 import org.springframework.util.AntPathMatcher;
 
+import javax.servlet.ServletContext;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URL;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static ch.sourcepond.spring.web.blueprint.internal.ResourceFinderClassLoader.getBundleClassLoader;
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.Math.max;
+import static java.lang.Runtime.getRuntime;
+import static java.lang.String.format;
+import static java.lang.Thread.currentThread;
 import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.Objects.requireNonNull;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -60,9 +72,34 @@ public class BundleResourcePatternResolver implements ResourcePatternResolver {
     static final String PREFIX_UNSPECIFIED = "";
 
     static final char PROTOCOL_SEPARATOR = ':';
+
+    /**
+     * Init parameter name to let the bundle and the delegate resolver search for resources
+     * concurrently.
+     */
+    public static final String BLUEPRINT_PARALLEL_RESOURCES = "blueprintParallelResourceResolution";
+
+    private static final Resource[] NO_RESOURCES = new Resource[0];
+    private static final int MAX_DELEGATE_THREADS = max(2, getRuntime().availableProcessors());
+    private static final AtomicInteger DELEGATE_THREADS = new AtomicInteger();
+    private static final ThreadPoolExecutor DELEGATE_EXECUTOR = new ThreadPoolExecutor(MAX_DELEGATE_THREADS,
+            MAX_DELEGATE_THREADS, 60, SECONDS, new LinkedBlockingQueue<>(), r -> {
+        final Thread thread = new Thread(r, "blueprint-resource-resolver-" + DELEGATE_THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        // Let idle threads die, so that nothing is left behind when the bundle is stopped
+        DELEGATE_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
     private final Map<String, InternalResolver> accessors = new HashMap<>();
+    private final ResourceResultCache cache = ResourceResultCache.shared();
     private final ResourcePatternResolver patternResolver;
     private volatile Bundle bundle;
+    private volatile boolean parallel;
+    private volatile StartupMetrics metrics = StartupMetrics.DISABLED;
 
     // Constructor for testing
     public BundleResourcePatternResolver(final ResourcePatternResolver patternResolver) {
@@ -85,6 +122,17 @@ public class BundleResourcePatternResolver implements ResourcePatternResolver {
         this.bundle = requireNonNull(bundle, "Bundle cannot be null");
     }
 
+    /**
+     * Applies the init parameters of the servlet context specified.
+     */
+    public void configure(final ServletContext servletContext) {
+        parallel = parseBoolean(servletContext.getInitParameter(BLUEPRINT_PARALLEL_RESOURCES));
+        metrics = StartupMetrics.of(servletContext);
+        for (final InternalResolver<?> resolver : accessors.values()) {
+            resolver.setMetrics(metrics);
+        }
+    }
+
     /**
      * @return
      */
@@ -150,6 +198,53 @@ public class BundleResourcePatternResolver implements ResourcePatternResolver {
         return getBundleClassLoader(bundle);
     }
 
+    /**
+     * Resolves the resources of the bundle specified which match the pattern specified through
+     * the resolver specified, and stores the result in the shared {@link ResourceResultCache}.
+     */
+    private String[] resolveResources(final Bundle bundle, final InternalResolver<?> resolver,
+                                      final String protocol, final String pattern) throws IOException {
+        final String[] paths = resolver.resolveResources(bundle, pattern);
+        cache.put(bundle, protocol, pattern, paths);
+        return paths;
+    }
+
+    /**
+     * Starts the delegate resolver on the shared executor. The delegate runs with the
+     * context class-loader of the caller because Spring uses it to scan the classpath.
+     */
+    private Future<Resource[]> startDelegate(final String pattern) {
+        final ClassLoader contextClassLoader = currentThread().getContextClassLoader();
+        return DELEGATE_EXECUTOR.submit(() -> {
+            final Thread thread = currentThread();
+            final ClassLoader previous = thread.getContextClassLoader();
+            thread.setContextClassLoader(contextClassLoader);
+            try {
+                return patternResolver.getResources(pattern);
+            } finally {
+                thread.setContextClassLoader(previous);
+            }
+        });
+    }
+
+    private static Resource[] awaitDelegate(final Future<Resource[]> delegate, final String pattern) throws IOException {
+        try {
+            return delegate.get();
+        } catch (final InterruptedException e) {
+            currentThread().interrupt();
+            throw new InterruptedIOException(format("Resolving %s interrupted", pattern));
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -160,7 +255,17 @@ public class BundleResourcePatternResolver implements ResourcePatternResolver {
     @Override
     public final Resource[] getResources(final String pattern)
             throws IOException {
+        final long start = metrics.start();
+        try {
+            return doGetResources(pattern);
+        } finally {
+            metrics.stop(StartupMetrics.Phase.RESOURCE_RESOLUTION, start);
+        }
+    }
+
+    private Resource[] doGetResources(final String pattern) throws IOException {
         final Resource[] foundResources;
+        final Bundle bundle = this.bundle;
         if (bundle == null) {
             foundResources = new Resource[0];
             LOG.warn("No resources determined for {} because no bundle is set", pattern);
@@ -174,18 +279,38 @@ public class BundleResourcePatternResolver implements ResourcePatternResolver {
             // No resolver found, call delegate pattern resolver
             if (resolver == null) {
                 foundResources = patternResolver.getResources(pattern);
+            } else if (cache.isMissing(bundle, protocol, normalizedPathPattern)) {
+                // Neither bundle nor delegate pattern resolver found anything last time
+                foundResources = NO_RESOURCES;
             } else {
-                final Collection<URL> foundResourceUrls = resolver
-                        .resolveResources(bundle, normalizedPathPattern);
+                // Obtained before searching; a miss is not remembered across a bundle change
+                final long missingValidity = cache.getMissingValidity();
+
+                // The delegate is only consulted if the bundle has no result; if resources
+                // should be resolved in parallel, start it speculatively while the bundle
+                // is searched.
+                String[] foundResourcePaths = cache.get(bundle, protocol, normalizedPathPattern);
+                Future<Resource[]> delegate = null;
+                if (foundResourcePaths == null) {
+                    if (parallel) {
+                        delegate = startDelegate(pattern);
+                    }
+                    foundResourcePaths = resolveResources(bundle, resolver, protocol, normalizedPathPattern);
+                }
 
-                if (foundResourceUrls.isEmpty()) {
+                if (foundResourcePaths.length == 0) {
                     // No result, let delegate pattern resolver try to find matching resources
-                    foundResources = patternResolver.getResources(pattern);
+                    foundResources = delegate == null ? patternResolver.getResources(pattern) : awaitDelegate(delegate, pattern);
+                    if (foundResources.length == 0) {
+                        cache.putMissing(bundle, protocol, normalizedPathPattern, missingValidity);
+                    }
                 } else {
-                    foundResources = new Resource[foundResourceUrls.size()];
-                    int i = 0;
-                    for (final URL foundResourceUrl : foundResourceUrls) {
-                        foundResources[i++] = new UrlResource(foundResourceUrl);
+                    if (delegate != null) {
+                        delegate.cancel(false);
+                    }
+                    foundResources = new Resource[foundResourcePaths.length];
+                    for (int i = 0; i < foundResourcePaths.length; i++) {
+                        foundResources[i] = new BundleResource(bundle, resolver, foundResourcePaths[i]);
                     }
                 }
             }
@@ -39,11 +39,11 @@ class BundleSpaceResolver extends InternalResolver<URL> {
      * (non-Javadoc)
      *
      * @see ch.bechtle.osgi.springmvc.blueprint.adapter.BaseResourceAccessor#
-     * listAllResources(org.osgi.framework.Bundle, java.lang.String)
+     * listResources(org.osgi.framework.Bundle, java.lang.String)
      */
     @Override
-    protected Collection<URL> listAllResources(final Bundle bundle) {
-        final Enumeration<URL> urls = bundle.findEntries("/", "*", true);
+    protected Collection<URL> listResources(final Bundle bundle, final ResourceScope scope) {
+        final Enumeration<URL> urls = bundle.findEntries(scope.getRoot(), scope.getFilePattern(), scope.isRecurse());
         final Collection<URL> resources;
 
         if (urls == null) {
@@ -74,7 +74,7 @@ class BundleSpaceResolver extends InternalResolver<URL> {
      * #toPath(java.lang.Object)
      */
     @Override
-    protected String toPath(final URL url, final String pattern) {
+    protected String toPath(final URL url) {
         String path = url.getPath();
 
         // Remove leading slash
@@ -48,10 +48,10 @@ class ClasspathResolver extends InternalResolver<String> {
      * #listResourcePaths(java.lang.String)
      */
     @Override
-    protected Collection<String> listAllResources(final Bundle bundle) {
+    protected Collection<String> listResources(final Bundle bundle, final ResourceScope scope) {
         final BundleWiring wiring = bundleWiring(bundle);
         LOG.debug("Bundle state of {} is {}, wiring is in use: {}", bundle.getSymbolicName(), bundle.getState(), wiring.isInUse());
-        return bundleWiring(bundle).listResources("/", "*", LISTRESOURCES_RECURSE);
+        return wiring.listResources(scope.getRoot(), scope.getFilePattern(), scope.isRecurse() ? LISTRESOURCES_RECURSE : 0);
     }
 
     /*
@@ -74,7 +74,7 @@ class ClasspathResolver extends InternalResolver<String> {
      * #toPath(java.lang.Object)
      */
     @Override
-    protected String toPath(final String path, final String pattern) {
+    protected String toPath(final String path) {
         return path;
     }
 }
@@ -0,0 +1,88 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.osgi.service.blueprint.container.BlueprintContainer;
+import org.osgi.service.blueprint.reflect.BeanMetadata;
+import org.osgi.service.blueprint.reflect.ComponentMetadata;
+import org.osgi.service.blueprint.reflect.ServiceReferenceMetadata;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static ch.sourcepond.spring.web.blueprint.internal.BlueprintApplicationContext.EMPTY;
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * Immutable snapshot of the components of a {@link BlueprintContainer}. Besides the ids of
+ * all components, it holds the metadata of the components which are represented as beans,
+ * i.e. all bean and service reference components. The name array returned by
+ * {@link #getNames()} is shared and must not be modified by the caller.
+ */
+final class ComponentSnapshot {
+    private final Set<String> componentIds;
+    private final Map<String, ComponentMetadata> metadata;
+    private final String[] names;
+
+    private ComponentSnapshot(final Set<String> componentIds, final Map<String, ComponentMetadata> metadata) {
+        this.componentIds = componentIds;
+        this.metadata = unmodifiableMap(metadata);
+        names = metadata.keySet().toArray(EMPTY);
+    }
+
+    static boolean isIncompatible(final ComponentMetadata metadata) {
+        return !(metadata instanceof BeanMetadata) && !(metadata instanceof ServiceReferenceMetadata);
+    }
+
+    static ComponentSnapshot create(final BlueprintContainer container) {
+        final Set<String> ids = new HashSet<>(container.getComponentIds());
+        final Map<String, ComponentMetadata> metadata = new LinkedHashMap<>(ids.size());
+        for (final String id : ids) {
+            final ComponentMetadata m = container.getComponentMetadata(id);
+            if (!isIncompatible(m)) {
+                metadata.put(id, m);
+            }
+        }
+        return new ComponentSnapshot(ids, metadata);
+    }
+
+    String[] getNames() {
+        return names;
+    }
+
+    /**
+     * Returns {@code true} if the component specified is represented as bean.
+     */
+    boolean contains(final String id) {
+        return metadata.containsKey(id);
+    }
+
+    /**
+     * Returns {@code true} if the container has a component with the id specified, no matter
+     * whether it is represented as bean.
+     */
+    boolean containsComponent(final String id) {
+        return componentIds.contains(id);
+    }
+
+    /**
+     * Returns the metadata of the component specified, or {@code null} if the component does
+     * not exist or is not represented as bean.
+     */
+    ComponentMetadata getMetadata(final String id) {
+        return metadata.get(id);
+    }
+}
@@ -0,0 +1,319 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.osgi.framework.Bundle;
+import org.osgi.service.blueprint.container.BlueprintContainer;
+import org.osgi.service.blueprint.container.NoSuchComponentException;
+import org.osgi.service.blueprint.reflect.BeanMetadata;
+import org.osgi.service.blueprint.reflect.ComponentMetadata;
+import org.osgi.service.blueprint.reflect.RefMetadata;
+import org.osgi.service.blueprint.reflect.ServiceReferenceMetadata;
+import org.osgi.service.blueprint.reflect.Target;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.CannotLoadBeanClassException;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.context.MessageSource;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static ch.sourcepond.spring.web.blueprint.internal.BlueprintApplicationContext.EMPTY;
+import static ch.sourcepond.spring.web.blueprint.internal.ComponentSnapshot.isIncompatible;
+import static org.osgi.service.blueprint.reflect.BeanMetadata.SCOPE_PROTOTYPE;
+import static org.osgi.service.blueprint.reflect.BeanMetadata.SCOPE_SINGLETON;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A {@link BlueprintContainer} together with all information derived from it. Every time
+ * a container is registered (or its service registration is modified), a new generation
+ * is created, so derived caches never outlive the container they have been built from.
+ * Callers which obtained a generation can finish their work against it even if a newer
+ * generation has been registered in the meantime.
+ */
+final class ContainerGeneration {
+    private static final Logger LOG = getLogger(ContainerGeneration.class);
+    private final ConcurrentMap<String, ResolvedType> resolvedTypes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Object> singletons = new ConcurrentHashMap<>();
+    private final Bundle bundle;
+    private final BlueprintContainer container;
+    private final StartupMetrics metrics;
+    private final long number;
+    private final Object snapshotLock = new Object();
+    private volatile ComponentSnapshot snapshot;
+    private volatile TypeIndex typeIndex;
+    private volatile AnnotationIndex annotationIndex;
+    private volatile MessageSource messageSource;
+
+    ContainerGeneration(final Bundle bundle, final BlueprintContainer container,
+                        final StartupMetrics metrics, final long number) {
+        this.bundle = bundle;
+        this.container = container;
+        this.metrics = metrics;
+        this.number = number;
+    }
+
+    BlueprintContainer getContainer() {
+        return container;
+    }
+
+    long getNumber() {
+        return number;
+    }
+
+    /**
+     * Returns the snapshot of all components which are represented as beans. The snapshot
+     * is created by the first caller; concurrent callers wait for it instead of scanning
+     * the container themselves.
+     */
+    ComponentSnapshot getSnapshot() {
+        ComponentSnapshot s = snapshot;
+        if (s == null) {
+            synchronized (snapshotLock) {
+                s = snapshot;
+                if (s == null) {
+                    final long start = metrics.start();
+                    s = ComponentSnapshot.create(container);
+                    metrics.stop(StartupMetrics.Phase.COMPONENT_FILTERING, start);
+                    snapshot = s;
+                }
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Returns the cached instance of the singleton component specified, or {@code null} if
+     * no instance has been cached yet.
+     */
+    Object getCachedSingleton(final String id) {
+        return singletons.get(id);
+    }
+
+    /**
+     * Caches the instance specified if the component is a bean with singleton scope.
+     * Other components are always requested from the container.
+     */
+    void cacheIfSingleton(final String id, final Object instance) {
+        final ComponentMetadata metadata = getSnapshot().getMetadata(id);
+        if (metadata instanceof BeanMetadata && SCOPE_SINGLETON.equals(effectiveScope((BeanMetadata) metadata))) {
+            singletons.putIfAbsent(id, instance);
+        }
+    }
+
+    /**
+     * Returns the scope of the bean specified. A top-level bean without an explicit scope is
+     * a singleton; only inlined beans, which have no id, default to prototype scope (see
+     * Blueprint specification, section 121.5.6).
+     */
+    static String effectiveScope(final BeanMetadata metadata) {
+        final String scope = metadata.getScope();
+        if (scope == null) {
+            return metadata.getId() == null ? SCOPE_PROTOTYPE : SCOPE_SINGLETON;
+        }
+        return scope;
+    }
+
+    /**
+     * Resolves the types of all filtered components once and caches the resulting index
+     * for the lifetime of this generation.
+     */
+    TypeIndex getTypeIndex() {
+        TypeIndex index = typeIndex;
+        if (index == null) {
+            final String[] ids = getSnapshot().getNames();
+            final long start = metrics.start();
+            final Map<String, Class<?>> types = new LinkedHashMap<>(ids.length);
+            final List<String> unresolved = new ArrayList<>();
+            for (final String id : ids) {
+                try {
+                    final Class<?> cl = resolveType(id);
+                    if (cl == null) {
+                        unresolved.add(id);
+                    } else {
+                        types.put(id, cl);
+                    }
+                } catch (final Exception e) {
+                    LOG.warn(e.getMessage(), e);
+                    unresolved.add(id);
+                }
+            }
+            index = new TypeIndex(types, unresolved.toArray(EMPTY));
+            metrics.stop(StartupMetrics.Phase.TYPE_RESOLUTION, start);
+            typeIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the annotation index over the types of the {@link #getTypeIndex() type index}.
+     */
+    AnnotationIndex getAnnotationIndex() {
+        AnnotationIndex index = annotationIndex;
+        if (index == null) {
+            index = new AnnotationIndex(getTypeIndex());
+            annotationIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the message source which has been determined for this generation, or {@code null}
+     * if it has not been determined yet.
+     */
+    MessageSource getMessageSource() {
+        return messageSource;
+    }
+
+    void setMessageSource(final MessageSource messageSource) {
+        this.messageSource = messageSource;
+    }
+
+    ComponentMetadata findMetadata(final String id) {
+        final ComponentMetadata known = getSnapshot().getMetadata(id);
+        if (known != null) {
+            return known;
+        }
+
+        try {
+            final ComponentMetadata metadata = container.getComponentMetadata(id);
+
+            if (isIncompatible(metadata)) {
+                throw new NoSuchComponentException("Actual metadata-class "
+                        + metadata.getClass() + " is not assignable from "
+                        + BeanMetadata.class.getName() + " or "
+                        + ServiceReferenceMetadata.class, id);
+            }
+
+            return metadata;
+        } catch (final NoSuchComponentException e) {
+            final NoSuchBeanDefinitionException nsbe = new NoSuchBeanDefinitionException(
+                    id);
+            nsbe.initCause(e);
+            throw nsbe;
+        }
+    }
+
+    private String getComponentId(final Target target) {
+        final String componentId;
+        if (target instanceof ComponentMetadata) {
+            componentId = ((ComponentMetadata) target).getId();
+        } else { // It can only be a RefMetadata
+            componentId = ((RefMetadata) target).getComponentId();
+        }
+        return componentId;
+    }
+
+    Class<?> resolveType(final String id) throws ClassNotFoundException, NoSuchMethodException {
+        return resolve(id).get();
+    }
+
+    /**
+     * Resolves the type of the component specified. The outcome of the resolution, including
+     * a failure, is cached for the lifetime of this generation. Components which do
+     * not exist are not cached.
+     */
+    ResolvedType resolve(final String id) throws NoSuchBeanDefinitionException {
+        ResolvedType resolved = resolvedTypes.get(id);
+        if (resolved == null) {
+            // Metadata lookup throws NoSuchBeanDefinitionException for unknown components
+            final ComponentMetadata metadata = findMetadata(id);
+            try {
+                resolved = ResolvedType.resolved(findType(metadata));
+            } catch (final ClassNotFoundException | NoSuchMethodException | RuntimeException e) {
+                resolved = ResolvedType.failed(e);
+            }
+            final ResolvedType previous = resolvedTypes.putIfAbsent(id, resolved);
+            if (previous != null) {
+                resolved = previous;
+            }
+        }
+        return resolved;
+    }
+
+    private Class<?> findType(final ComponentMetadata metadata) throws ClassNotFoundException, NoSuchMethodException {
+        assert metadata != null : "metadata cannot be null";
+        metrics.findTypeCalled();
+
+        Class<?> clazz = null;
+
+        if (metadata instanceof BeanMetadata) {
+            final BeanMetadata beanMetadata = (BeanMetadata) metadata;
+            final String factoryMethodNameOrNull = beanMetadata
+                    .getFactoryMethod();
+            final String className = beanMetadata.getClassName();
+
+            // Class name can be null when a factory component was used to construct the bean.
+            if (className == null) {
+
+                // We need a factory-method name at this point; throw an exception if not so.
+                if (factoryMethodNameOrNull == null) {
+                    throw new IllegalStateException(
+                            "Invalid metadata: class-name nor factory-method is provided! "
+                                    + metadata);
+                }
+
+                // Get the metadata of the factory component and validate it.
+                final Target factoryComponent = beanMetadata
+                        .getFactoryComponent();
+                if (factoryComponent == null) {
+                    throw new IllegalStateException(
+                            "No class-name nor a factory component has been specified!");
+                }
+
+                // The factory-component itself could also be constructed through
+                // another factory. Because this, we need to resolve its type
+                // recursively; already resolved factories are taken from the cache.
+                final Class<?> factoryComponentClass = resolveType(getComponentId(factoryComponent));
+
+                // Almost at the end; what we finally need is the return type of the factory-method
+                clazz = factoryComponentClass.getMethod(factoryMethodNameOrNull).getReturnType();
+            } else if (factoryMethodNameOrNull != null) {
+                // A static factory-method should be defined; get its return type.
+                clazz = determineFactoryReturnType(beanMetadata);
+            } else {
+                // Simply load the class with the class-name specified
+                clazz = loadClass(className);
+            }
+        } else if (metadata instanceof ServiceReferenceMetadata) {
+            final ServiceReferenceMetadata referenceMetadata = (ServiceReferenceMetadata) metadata;
+
+            // getId() can be null when the reference-element is nested; skip it
+            // because we must not consider nested elements!
+            if (referenceMetadata.getInterface() != null) {
+                clazz = loadClass(referenceMetadata.getInterface());
+            }
+        } else {
+            throw new CannotLoadBeanClassException(bundle.toString(),
+                    metadata.getId(), metadata.toString(),
+                    new ClassNotFoundException());
+        }
+
+        return clazz;
+    }
+
+    private Class<?> determineFactoryReturnType(final BeanMetadata metadata) throws
+            ClassNotFoundException, NoSuchMethodException {
+        final Class<?> factoryClass = loadClass(metadata.getClassName());
+        return factoryClass.getMethod(metadata.getFactoryMethod()).getReturnType();
+    }
+
+    private Class<?> loadClass(final String className) throws ClassNotFoundException {
+        return bundle.loadClass(className);
+    }
+}
@@ -14,29 +14,69 @@ limitations under the License.*/
 package ch.sourcepond.spring.web.blueprint.internal;
 
 import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWiring;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.PathMatcher;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static ch.sourcepond.spring.web.blueprint.internal.BlueprintApplicationContext.EMPTY;
+import static java.util.Arrays.asList;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
- *
+ * Base class of the resolvers which list the resources of a bundle. Only the {@link ResourceScope}
+ * of a pattern, i.e. the sub-tree below its fixed root directory, is listed. The paths listed for
+ * a bundle are kept in an index per scope which serves all subsequent pattern queries with the
+ * same scope. The index of a bundle is bound to its current {@link BundleWiring} (or
+ * {@link BundleRevision} if the bundle is not resolved), and is listed again as soon as the
+ * bundle has been updated or refreshed.
  */
 abstract class InternalResolver<T> {
     private static final Logger LOG = getLogger(InternalResolver.class);
+    private static final int MAX_CACHED_PATTERNS = 1024;
+    private final ConcurrentMap<Long, ResourceIndex> indexes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PathPattern> patterns = new ConcurrentHashMap<>();
     private final PathMatcher matcher;
+    private volatile StartupMetrics metrics = StartupMetrics.DISABLED;
 
     InternalResolver(final PathMatcher matcher) {
         this.matcher = matcher;
     }
 
-    abstract Collection<T> listAllResources(Bundle bundle);
+    /**
+     * Returns the compiled form of the pattern specified. Compiled patterns are cached until
+     * {@link #MAX_CACHED_PATTERNS} is reached, which protects against patterns built from
+     * arbitrary input.
+     */
+    final PathPattern compile(final String pattern) {
+        PathPattern compiled = patterns.get(pattern);
+        if (compiled == null) {
+            compiled = PathPattern.compile(matcher, pattern);
+            if (patterns.size() < MAX_CACHED_PATTERNS) {
+                final PathPattern previous = patterns.putIfAbsent(pattern, compiled);
+                if (previous != null) {
+                    compiled = previous;
+                }
+            }
+        }
+        return compiled;
+    }
+
+    void setMetrics(final StartupMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    abstract Collection<T> listResources(Bundle bundle, ResourceScope scope);
 
     abstract URL doResolveResource(final Bundle bundle, String path);
 
@@ -56,33 +96,92 @@ abstract class InternalResolver<T> {
     /**
      *
      */
-    abstract String toPath(T path, String pattern);
+    abstract String toPath(T path);
 
-    final Collection<URL> resolveResources(final Bundle bundle, final String pattern)
-            throws IOException {
-        // Create the result set and list recursively all resources contained by
-        // the directory specified.
-        final Collection<URL> foundResources = new LinkedList<>();
-        final Collection<T> resourcePaths = listAllResources(bundle);
-
-        LOG.debug("Following resources listed for {} before filtering: {}",
-                bundle.getSymbolicName(),
-                resourcePaths);
-
-        if (resourcePaths != null && !resourcePaths.isEmpty()) {
-            for (final T resourcePath : resourcePaths) {
-                // Check whether we need to resolve and include the current path
-                // into the search result. Ignore directories!
-                final String resourcePathAsString = toPath(resourcePath, pattern);
-                if (matcher.match(pattern, resourcePathAsString) && !resourcePathAsString.endsWith("/")) {
-                    foundResources.add(resolveResource(bundle, resourcePathAsString));
-                } else if (LOG.isDebugEnabled()) {
-                    LOG.debug("Ignored {} from {} because it does not match pattern {}",
-                            resourcePathAsString, bundle.getSymbolicName(), pattern);
+    /**
+     * Returns the object which identifies the current content of the bundle specified. As long
+     * as the same object is returned, the indexed resource paths are considered up to date.
+     */
+    static Object contentKey(final Bundle bundle) {
+        final BundleWiring wiring = bundle.adapt(BundleWiring.class);
+        return wiring == null ? bundle.adapt(BundleRevision.class) : wiring;
+    }
+
+    /**
+     * Returns the paths of all resources of the bundle specified which are in the scope of the
+     * pattern specified, excluding directories. The returned array is shared and must not be
+     * modified by the caller.
+     */
+    final String[] listResourcePaths(final Bundle bundle, final String pattern) {
+        final Object key = contentKey(bundle);
+        ResourceIndex index = indexes.get(bundle.getBundleId());
+        if (index == null || index.key != key) {
+            index = new ResourceIndex(key);
+            indexes.put(bundle.getBundleId(), index);
+        }
+
+        final ResourceScope scope = ResourceScope.of(pattern);
+        String[] paths = index.paths.get(scope);
+        if (paths == null) {
+            final List<String> listed = new ArrayList<>();
+            final Collection<T> resources = listResources(bundle, scope);
+            if (resources != null) {
+                for (final T resource : resources) {
+                    final String path = toPath(resource);
+                    if (!path.endsWith("/")) {
+                        listed.add(path);
+                    }
                 }
             }
+            paths = listed.toArray(EMPTY);
+            metrics.resourcesListed(paths.length);
+            final String[] previous = index.paths.putIfAbsent(scope, paths);
+            if (previous != null) {
+                paths = previous;
+            }
+            LOG.debug("Indexed {} resources of {} in scope {}", paths.length, bundle.getSymbolicName(), scope);
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the paths of all resources of the bundle specified which match the pattern
+     * specified. The URLs of the resources are not resolved.
+     */
+    final String[] resolveResources(final Bundle bundle, final String pattern)
+            throws IOException {
+        // Create the result set and match the indexed resource paths
+        // of the bundle specified.
+        final List<String> foundResources = new ArrayList<>();
+        final String[] resourcePaths = listResourcePaths(bundle, pattern);
+        final PathPattern compiledPattern = compile(pattern);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Following resources listed for {} before filtering: {}",
+                    bundle.getSymbolicName(),
+                    asList(resourcePaths));
+        }
+
+        for (final String resourcePath : resourcePaths) {
+            // Check whether we need to resolve and include the current path
+            // into the search result.
+            if (compiledPattern.matches(resourcePath)) {
+                foundResources.add(resourcePath);
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("Ignored {} from {} because it does not match pattern {}",
+                        resourcePath, bundle.getSymbolicName(), pattern);
+            }
         }
 
-        return foundResources;
+        return foundResources.toArray(EMPTY);
+    }
+
+    private static final class ResourceIndex {
+        final ConcurrentMap<ResourceScope, String[]> paths = new ConcurrentHashMap<>();
+        final Object key;
+
+        ResourceIndex(final Object key) {
+            this.key = key;
+        }
     }
 }
@@ -0,0 +1,230 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static ch.sourcepond.spring.web.blueprint.internal.BlueprintApplicationContext.EMPTY;
+import static java.lang.Long.numberOfLeadingZeros;
+import static java.lang.Math.min;
+import static java.lang.System.nanoTime;
+
+/**
+ * Counts and latencies of the lookups served by a {@link BlueprintApplicationContext} at runtime.
+ * All counters are {@link LongAdder LongAdders}, so recording does not contend between threads
+ * and reading never takes a lock. Once a bean name is tracked, recording does not allocate.
+ * At most {@link #MAX_TRACKED_NAMES} bean names are tracked; lookups of further names are
+ * only counted as a whole. Recording can be switched on and off at any time; while it is
+ * switched off, the only cost of a lookup is reading a volatile field.
+ */
+public final class LookupMetrics implements LookupMetricsMBean {
+
+    /**
+     * Servlet context attribute under which the lookup metrics of the web bundle are published.
+     */
+    public static final String BLUEPRINT_LOOKUP_METRICS = "blueprintLookupMetrics";
+
+    /**
+     * Number of buckets of a latency histogram; the last bucket holds all calls which took
+     * longer than 2<sup>{@code BUCKETS - 2}</sup> nanoseconds.
+     */
+    static final int BUCKETS = 40;
+    static final int MAX_TRACKED_NAMES = 1024;
+    static final int TOP_N = 10;
+
+    /**
+     * Instrumented lookup operations.
+     */
+    public enum Operation {
+        GET_BEAN, GET_BEANS_OF_TYPE, GET_BEAN_NAMES_FOR_TYPE, CONTAINS_BEAN, GET_RESOURCES
+    }
+
+    private final LongAdder[] counts = new LongAdder[Operation.values().length];
+    private final LongAdder[] nanos = new LongAdder[Operation.values().length];
+    private final LongAdder[][] histograms = new LongAdder[Operation.values().length][BUCKETS];
+    private final ConcurrentMap<String, LongAdder> beanNames = new ConcurrentHashMap<>();
+    private final LongAdder untrackedNames = new LongAdder();
+    private volatile boolean enabled;
+
+    public LookupMetrics(final boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+            nanos[i] = new LongAdder();
+            for (int j = 0; j < BUCKETS; j++) {
+                histograms[i][j] = new LongAdder();
+            }
+        }
+    }
+
+    static int bucketOf(final long nanos) {
+        return nanos <= 0 ? 0 : min(BUCKETS - 1, 64 - numberOfLeadingZeros(nanos));
+    }
+
+    /**
+     * Returns the start time to be passed to {@link #record(Operation, long)}, or 0 if
+     * recording is switched off.
+     */
+    long start() {
+        return enabled ? nanoTime() : 0;
+    }
+
+    void record(final Operation operation, final long start) {
+        if (start != 0) {
+            final long elapsed = nanoTime() - start;
+            final int i = operation.ordinal();
+            counts[i].increment();
+            nanos[i].add(elapsed);
+            histograms[i][bucketOf(elapsed)].increment();
+        }
+    }
+
+    /**
+     * Same as {@link #record(Operation, long)}, but also counts the lookup of the bean name
+     * specified.
+     */
+    void record(final Operation operation, final String beanName, final long start) {
+        if (start != 0) {
+            record(operation, start);
+            LongAdder count = beanNames.get(beanName);
+            if (count == null && beanNames.size() < MAX_TRACKED_NAMES) {
+                count = beanNames.computeIfAbsent(beanName, n -> new LongAdder());
+            }
+            if (count == null) {
+                untrackedNames.increment();
+            } else {
+                count.increment();
+            }
+        }
+    }
+
+    public long getCount(final Operation operation) {
+        return counts[operation.ordinal()].sum();
+    }
+
+    public long getTotalNanos(final Operation operation) {
+        return nanos[operation.ordinal()].sum();
+    }
+
+    public long[] getLatencyHistogram(final Operation operation) {
+        final LongAdder[] histogram = histograms[operation.ordinal()];
+        final long[] values = new long[histogram.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = histogram[i].sum();
+        }
+        return values;
+    }
+
+    /**
+     * Returns the number of lookups of bean names which were not tracked because
+     * {@link #MAX_TRACKED_NAMES} had been reached.
+     */
+    public long getUntrackedNameLookups() {
+        return untrackedNames.sum();
+    }
+
+    /**
+     * Returns the {@code n} most frequently looked up bean names with their lookup counts,
+     * in descending order.
+     */
+    public Map<String, Long> getTopBeans(final int n) {
+        final List<Map.Entry<String, Long>> entries = new ArrayList<>(beanNames.size());
+        for (final Map.Entry<String, LongAdder> entry : beanNames.entrySet()) {
+            entries.add(new SimpleImmutableEntry<>(entry.getKey(), entry.getValue().sum()));
+        }
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        final Map<String, Long> top = new LinkedHashMap<>();
+        for (final Map.Entry<String, Long> entry : entries.subList(0, min(n, entries.size()))) {
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getGetBeanCount() {
+        return getCount(Operation.GET_BEAN);
+    }
+
+    @Override
+    public long getGetBeansOfTypeCount() {
+        return getCount(Operation.GET_BEANS_OF_TYPE);
+    }
+
+    @Override
+    public long getGetBeanNamesForTypeCount() {
+        return getCount(Operation.GET_BEAN_NAMES_FOR_TYPE);
+    }
+
+    @Override
+    public long getContainsBeanCount() {
+        return getCount(Operation.CONTAINS_BEAN);
+    }
+
+    @Override
+    public long getGetResourcesCount() {
+        return getCount(Operation.GET_RESOURCES);
+    }
+
+    @Override
+    public String[] getTopBeanNames() {
+        final List<String> names = new ArrayList<>(TOP_N);
+        for (final Map.Entry<String, Long> entry : getTopBeans(TOP_N).entrySet()) {
+            names.add(entry.getKey() + "=" + entry.getValue());
+        }
+        return names.toArray(EMPTY);
+    }
+
+    @Override
+    public long getTotalNanos(final String operation) {
+        return getTotalNanos(Operation.valueOf(operation));
+    }
+
+    @Override
+    public long[] getLatencyHistogram(final String operation) {
+        return getLatencyHistogram(Operation.valueOf(operation));
+    }
+
+    /**
+     * Resets all counters. Lookups which are recorded concurrently may be partially lost.
+     */
+    @Override
+    public void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i].reset();
+            nanos[i].reset();
+            for (final LongAdder bucket : histograms[i]) {
+                bucket.reset();
+            }
+        }
+        beanNames.clear();
+        untrackedNames.reset();
+    }
+}
@@ -0,0 +1,50 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+/**
+ * Management interface of {@link LookupMetrics}. Operation names are the names of the
+ * {@link LookupMetrics.Operation} constants, e.g. {@code GET_BEAN}.
+ */
+public interface LookupMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getGetBeanCount();
+
+    long getGetBeansOfTypeCount();
+
+    long getGetBeanNamesForTypeCount();
+
+    long getContainsBeanCount();
+
+    long getGetResourcesCount();
+
+    /**
+     * Returns the most frequently looked up bean names as "name=count", in descending order.
+     */
+    String[] getTopBeanNames();
+
+    long getTotalNanos(String operation);
+
+    /**
+     * Returns the latency histogram of the operation specified; element {@code i} holds the
+     * number of calls which took less than 2<sup>i</sup> but at least 2<sup>i-1</sup> nanoseconds.
+     */
+    long[] getLatencyHistogram(String operation);
+
+    void reset();
+}
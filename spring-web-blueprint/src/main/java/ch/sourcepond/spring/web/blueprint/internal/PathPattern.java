@@ -0,0 +1,139 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.springframework.util.PathMatcher;
+
+/**
+ * Ant-style path pattern which has been analyzed once and can then be matched against many
+ * paths. The common forms {@code prefix/**}{@code /*.ext} and {@code prefix/*.ext} are matched
+ * through plain string comparisons without allocating anything; all other patterns, and paths
+ * containing empty elements, are delegated to a {@link PathMatcher}.
+ */
+abstract class PathPattern {
+    private static final char SEPARATOR = '/';
+    private static final String ANY_DIRECTORY = "**/";
+    private static final String EMPTY_ELEMENT = "//";
+
+    abstract boolean matches(String path);
+
+    private static boolean isLiteral(final String part) {
+        for (int i = 0; i < part.length(); i++) {
+            final char ch = part.charAt(i);
+            if (ch == '*' || ch == '?' || ch == '{' || ch == '}' || ch == '\\') {
+                return false;
+            }
+        }
+        return !part.contains(EMPTY_ELEMENT);
+    }
+
+    static PathPattern compile(final PathMatcher matcher, final String pattern) {
+        final int star = pattern.indexOf('*');
+        if (star != -1) {
+            final String prefix = pattern.substring(0, star);
+            if (prefix.isEmpty() || prefix.charAt(prefix.length() - 1) == SEPARATOR) {
+                final boolean anyDirectory = pattern.startsWith(ANY_DIRECTORY, star);
+                final int suffixStart = anyDirectory ? star + ANY_DIRECTORY.length() + 1 : star + 1;
+
+                if (!anyDirectory || pattern.indexOf('*', star + ANY_DIRECTORY.length()) == suffixStart - 1) {
+                    final String suffix = pattern.substring(suffixStart);
+                    if (isLiteral(prefix) && isLiteral(suffix) && suffix.indexOf(SEPARATOR) == -1) {
+                        final PathPattern fallback = new Delegate(matcher, pattern);
+                        return anyDirectory ? new AnyDirectory(fallback, prefix, suffix) :
+                                new SingleDirectory(fallback, prefix, suffix);
+                    }
+                }
+            }
+        }
+        return new Delegate(matcher, pattern);
+    }
+
+    /**
+     * Base class of the patterns which are matched through string comparisons. The
+     * {@link PathMatcher} ignores empty path elements, so such paths are matched by the
+     * fallback pattern.
+     */
+    private abstract static class Literal extends PathPattern {
+        private final PathPattern fallback;
+        final String prefix;
+        final String suffix;
+
+        Literal(final PathPattern fallback, final String prefix, final String suffix) {
+            this.fallback = fallback;
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+
+        abstract boolean matchesLiteral(String path);
+
+        @Override
+        final boolean matches(final String path) {
+            return path.contains(EMPTY_ELEMENT) ? fallback.matches(path) : matchesLiteral(path);
+        }
+    }
+
+    /**
+     * Pattern of the form {@code prefix/*suffix}: matches the files directly contained by the
+     * prefix directory.
+     */
+    private static final class SingleDirectory extends Literal {
+
+        SingleDirectory(final PathPattern fallback, final String prefix, final String suffix) {
+            super(fallback, prefix, suffix);
+        }
+
+        @Override
+        boolean matchesLiteral(final String path) {
+            final int end = path.length() - suffix.length();
+            return end >= prefix.length()
+                    && path.startsWith(prefix)
+                    && path.endsWith(suffix)
+                    && path.indexOf(SEPARATOR, prefix.length()) == -1;
+        }
+    }
+
+    /**
+     * Pattern of the form {@code prefix/**}{@code /*suffix}: matches the files contained by the
+     * prefix directory or any of its sub-directories.
+     */
+    private static final class AnyDirectory extends Literal {
+
+        AnyDirectory(final PathPattern fallback, final String prefix, final String suffix) {
+            super(fallback, prefix, suffix);
+        }
+
+        @Override
+        boolean matchesLiteral(final String path) {
+            return path.length() >= prefix.length() + suffix.length()
+                    && path.startsWith(prefix)
+                    && path.endsWith(suffix)
+                    && (!prefix.isEmpty() || !path.isEmpty() && path.charAt(0) != SEPARATOR);
+        }
+    }
+
+    private static final class Delegate extends PathPattern {
+        private final PathMatcher matcher;
+        private final String pattern;
+
+        Delegate(final PathMatcher matcher, final String pattern) {
+            this.matcher = matcher;
+            this.pattern = pattern;
+        }
+
+        @Override
+        boolean matches(final String path) {
+            return matcher.match(pattern, path);
+        }
+    }
+}
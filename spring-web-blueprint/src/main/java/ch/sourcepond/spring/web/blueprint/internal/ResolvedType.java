@@ -0,0 +1,57 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+/**
+ * Cached outcome of a component type resolution. Either holds the resolved type (which
+ * can be {@code null} for nested references without interface) or the exception which
+ * occurred while resolving it, in which case the exception is re-thrown on every access.
+ */
+final class ResolvedType {
+    private final Class<?> type;
+    private final Exception failure;
+
+    private ResolvedType(final Class<?> type, final Exception failure) {
+        this.type = type;
+        this.failure = failure;
+    }
+
+    static ResolvedType resolved(final Class<?> type) {
+        return new ResolvedType(type, null);
+    }
+
+    static ResolvedType failed(final Exception failure) {
+        return new ResolvedType(null, failure);
+    }
+
+    /**
+     * Returns the resolved type, or {@code null} if the resolution failed or yielded no type.
+     */
+    Class<?> getOrNull() {
+        return type;
+    }
+
+    Class<?> get() throws ClassNotFoundException, NoSuchMethodException {
+        if (failure != null) {
+            if (failure instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) failure;
+            }
+            if (failure instanceof NoSuchMethodException) {
+                throw (NoSuchMethodException) failure;
+            }
+            throw (RuntimeException) failure;
+        }
+        return type;
+    }
+}
@@ -15,59 +15,390 @@ package ch.sourcepond.spring.web.blueprint.internal;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.framework.wiring.BundleWire;
 import org.osgi.framework.wiring.BundleWiring;
 
+import javax.servlet.ServletContext;
+
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static ch.sourcepond.spring.web.blueprint.internal.BlueprintApplicationContext.EMPTY;
+import static ch.sourcepond.spring.web.blueprint.internal.ResourceSearchScope.GLOBAL;
+import static ch.sourcepond.spring.web.blueprint.internal.ResourceSearchScope.WIRED;
+import static ch.sourcepond.spring.web.blueprint.internal.ResourceSearchScope.WIRED_THEN_GLOBAL;
+import static java.lang.Boolean.TRUE;
 import static java.util.Collections.enumeration;
+import static java.util.Collections.emptySet;
+import static org.osgi.framework.Constants.SYSTEM_BUNDLE_ID;
+import static org.osgi.framework.wiring.BundleWiring.LISTRESOURCES_LOCAL;
+import static org.osgi.framework.wiring.BundleWiring.LISTRESOURCES_RECURSE;
 import org.slf4j.LoggerFactory;
 
 /**
- *
+ * Class-loader which finds resources in the bundles of the {@link ResourceSearchScope} it has
+ * been configured with. To avoid probing every bundle, an index is built on first use which maps
+ * every directory to the bundles of the scope containing resources in it. The class-loader of
+ * each indexed bundle is cached together with the wiring it belongs to. Resources in directories
+ * which no bundle provides are looked up through the system bundle. The names of resources which
+ * could not be found at all are remembered in a bounded negative cache. To keep the index and the
+ * negative cache up to date, the class-loader must be registered as bundle listener as long as it
+ * is in use.
  */
-public class ResourceFinderClassLoader extends ClassLoader {
+public class ResourceFinderClassLoader extends ClassLoader implements SynchronousBundleListener {
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(ResourceFinderClassLoader.class);
+
+    /**
+     * Init parameter name to declare the {@link ResourceSearchScope}; defaults to
+     * {@link ResourceSearchScope#GLOBAL}.
+     */
+    public static final String BLUEPRINT_RESOURCE_SEARCH_SCOPE = "blueprintResourceSearchScope";
+
+    /**
+     * Init parameter name to declare the comma separated symbolic names of the bundles to be
+     * searched if the scope is {@link ResourceSearchScope#ALLOWLIST}.
+     */
+    public static final String BLUEPRINT_RESOURCE_SEARCH_BUNDLES = "blueprintResourceSearchBundles";
+
+    private static final Indexed[] NO_PROVIDERS = new Indexed[0];
+    static final int MISSING_CAPACITY = 4096;
+    private final BoundedCache<String, Boolean> missing = new BoundedCache<>(MISSING_CAPACITY);
+    private final AtomicLong invalidations = new AtomicLong();
+    private final Object missingLock = new Object();
     private final BundleContext context;
+    private final Set<String> allowlist;
+    private final Index[] indexes;
+    private final StartupMetrics metrics;
+    private volatile ClassLoader systemLoader;
 
     public ResourceFinderClassLoader(final BundleContext context) {
+        this(context, GLOBAL, emptySet());
+    }
+
+    public ResourceFinderClassLoader(final BundleContext context, final ServletContext servletContext) {
+        this(context, parseScope(servletContext.getInitParameter(BLUEPRINT_RESOURCE_SEARCH_SCOPE)),
+                parseAllowlist(servletContext.getInitParameter(BLUEPRINT_RESOURCE_SEARCH_BUNDLES)),
+                StartupMetrics.of(servletContext));
+    }
+
+    ResourceFinderClassLoader(final BundleContext context, final ResourceSearchScope scope, final Set<String> allowlist) {
+        this(context, scope, allowlist, StartupMetrics.DISABLED);
+    }
+
+    ResourceFinderClassLoader(final BundleContext context, final ResourceSearchScope scope,
+                              final Set<String> allowlist, final StartupMetrics metrics) {
         super(getBundleClassLoader(context.getBundle()));
         this.context = context;
+        this.allowlist = allowlist;
+        this.metrics = metrics;
+        indexes = scope == WIRED_THEN_GLOBAL ? new Index[]{new Index(WIRED), new Index(GLOBAL)} : new Index[]{new Index(scope)};
     }
 
     static ClassLoader getBundleClassLoader(final Bundle bundle) {
         return bundle.adapt(BundleWiring.class).getClassLoader();
     }
 
+    private static ResourceSearchScope parseScope(final String scopeOrNull) {
+        return scopeOrNull == null ? GLOBAL : ResourceSearchScope.valueOf(scopeOrNull.trim().toUpperCase(Locale.ENGLISH));
+    }
+
+    private static Set<String> parseAllowlist(final String namesOrNull) {
+        final Set<String> names = new HashSet<>();
+        if (namesOrNull != null) {
+            for (final String name : namesOrNull.split(",")) {
+                if (!name.trim().isEmpty()) {
+                    names.add(name.trim());
+                }
+            }
+        }
+        return names;
+    }
+
+    private static String directoryOf(final String name) {
+        final int idx = name.lastIndexOf('/');
+        return idx == -1 ? "" : name.substring(0, idx);
+    }
+
+    private ClassLoader getSystemLoader() {
+        ClassLoader loader = systemLoader;
+        if (loader == null) {
+            loader = getBundleClassLoader(context.getBundle(SYSTEM_BUNDLE_ID));
+            systemLoader = loader;
+        }
+        return loader;
+    }
+
+    /**
+     * Returns the ratio of lookups of resources which have been answered from the
+     * negative cache.
+     */
+    public double getNegativeCacheHitRate() {
+        return missing.getHitRate();
+    }
+
+    @Override
+    public void bundleChanged(final BundleEvent event) {
+        switch (event.getType()) {
+            case BundleEvent.INSTALLED:
+            case BundleEvent.RESOLVED:
+            case BundleEvent.UPDATED:
+            case BundleEvent.UNINSTALLED: {
+                // Lookups which started before are not allowed to remember their misses
+                synchronized (missingLock) {
+                    invalidations.incrementAndGet();
+                    missing.clear();
+                }
+                break;
+            }
+            default: {
+                // noop
+            }
+        }
+        for (final Index index : indexes) {
+            index.bundleChanged(event);
+        }
+    }
+
     @Override
     protected Enumeration<URL> findResources(final String name) throws IOException {
-        final List<URL> resources = new LinkedList<>();
-        for (final Bundle b : context.getBundles()) {
-            final ClassLoader cl = getBundleClassLoader(b);
-            if (cl != null) {
-                final Enumeration<URL> e = cl.getResources(name);
+        if (missing.get(name) != null) {
+            return enumeration(Collections.<URL>emptyList());
+        }
+        final long validity = invalidations.get();
+        for (final Index index : indexes) {
+            final Indexed[] found = index.getProviders(name);
+            final Set<String> seen = new HashSet<>();
+            final List<URL> resources = new LinkedList<>();
+            for (final Indexed candidate : found) {
+                metrics.classLoaderProbed();
+                final Enumeration<URL> e = candidate.loader.getResources(name);
                 while (e.hasMoreElements()) {
-                    resources.add(e.nextElement());
+                    final URL url = e.nextElement();
+                    // Do not use URL.equals because it may resolve host names
+                    if (seen.add(url.toExternalForm())) {
+                        resources.add(url);
+                    }
                 }
             }
+            if (!resources.isEmpty()) {
+                return enumeration(resources);
+            }
+        }
+        metrics.classLoaderProbed();
+        final Enumeration<URL> resources = getSystemLoader().getResources(name);
+        if (!resources.hasMoreElements()) {
+            rememberMissing(name, validity);
         }
-        return enumeration(resources);
+        return resources;
     }
 
-  @Override
-  protected URL findResource(String name){
-    for (final Bundle b : context.getBundles()) {
-        final ClassLoader cl = getBundleClassLoader(b);
-        if (cl != null) {
-            URL url = cl.getResource(name);
-            if(url != null){
-                return url;
+    @Override
+    protected URL findResource(final String name) {
+        if (missing.get(name) != null) {
+            return null;
+        }
+        final long validity = invalidations.get();
+        for (final Index index : indexes) {
+            for (final Indexed candidate : index.getProviders(name)) {
+                metrics.classLoaderProbed();
+                final URL url = candidate.loader.getResource(name);
+                if (url != null) {
+                    return url;
+                }
             }
         }
+        metrics.classLoaderProbed();
+        final URL url = getSystemLoader().getResource(name);
+        if (url == null) {
+            rememberMissing(name, validity);
+        }
+        return url;
+    }
+
+    /**
+     * Remembers that the resource specified could not be found, unless the bundles have changed
+     * since the lookup started. The check is done under the same lock as the invalidation, so a
+     * miss cannot be put after the cache has been cleared.
+     */
+    private void rememberMissing(final String name, final long validity) {
+        synchronized (missingLock) {
+            if (validity == invalidations.get()) {
+                missing.put(name, TRUE);
+            }
+        }
+    }
+
+    /**
+     * Index of the bundles of a single {@link ResourceSearchScope}. The providers of a directory
+     * are ordered by their rank, which is the bundle id or, for wired bundles, the position of
+     * the first wire to the bundle.
+     */
+    private final class Index {
+        private final ConcurrentMap<String, Indexed[]> providers = new ConcurrentHashMap<>();
+        private final Map<Long, Indexed> indexed = new HashMap<>();
+        private final Map<Long, Long> wiredRanks = new HashMap<>();
+        private final ResourceSearchScope scope;
+        private volatile boolean built;
+
+        Index(final ResourceSearchScope scope) {
+            this.scope = scope;
+        }
+
+        /**
+         * Returns the rank of the bundle specified, or -1 if it is not part of the scope.
+         */
+        private long rank(final Bundle bundle) {
+            switch (scope) {
+                case WIRED: {
+                    final Long rank = wiredRanks.get(bundle.getBundleId());
+                    return rank == null ? -1 : rank;
+                }
+                case ALLOWLIST: {
+                    return allowlist.contains(bundle.getSymbolicName()) ? bundle.getBundleId() : -1;
+                }
+                default: {
+                    return bundle.getBundleId();
+                }
+            }
+        }
+
+        private Collection<Bundle> candidates() {
+            if (scope != WIRED) {
+                return Arrays.asList(context.getBundles());
+            }
+            final Bundle webBundle = context.getBundle();
+            final Map<Long, Bundle> wired = new LinkedHashMap<>();
+            final List<BundleWire> wires = webBundle.adapt(BundleWiring.class).getRequiredWires(null);
+            if (wires != null) {
+                for (final BundleWire wire : wires) {
+                    final Bundle provider = wire.getProviderWiring().getBundle();
+                    if (provider.getBundleId() != webBundle.getBundleId() && !wired.containsKey(provider.getBundleId())) {
+                        wiredRanks.put(provider.getBundleId(), (long) wired.size());
+                        wired.put(provider.getBundleId(), provider);
+                    }
+                }
+            }
+            return wired.values();
+        }
+
+        /**
+         * Returns the bundles which have resources in the directory of the resource specified.
+         */
+        Indexed[] getProviders(final String name) {
+            if (!built) {
+                synchronized (indexed) {
+                    if (!built) {
+                        for (final Bundle bundle : candidates()) {
+                            index(bundle);
+                        }
+                        built = true;
+                        LOG.debug("Indexed {} directories of {} bundles in scope {}", providers.size(), indexed.size(), scope);
+                    }
+                }
+            }
+            final Indexed[] found = providers.get(directoryOf(name));
+            return found == null ? NO_PROVIDERS : found;
+        }
+
+        // Must be called while holding the lock on indexed
+        private void index(final Bundle bundle) {
+            final long rank = rank(bundle);
+            final BundleWiring wiring = bundle.adapt(BundleWiring.class);
+            if (rank < 0 || wiring == null || wiring.getClassLoader() == null) {
+                return;
+            }
+            final Indexed entry = new Indexed(rank, wiring.getClassLoader());
+            indexed.put(bundle.getBundleId(), entry);
+
+            final Set<String> directories = new HashSet<>();
+            final Collection<String> resources = wiring.listResources("/", "*", LISTRESOURCES_LOCAL | LISTRESOURCES_RECURSE);
+            if (resources != null) {
+                for (final String resource : resources) {
+                    if (!resource.endsWith("/")) {
+                        directories.add(directoryOf(resource));
+                    }
+                }
+            }
+            entry.directories = directories.toArray(EMPTY);
+
+            for (final String directory : entry.directories) {
+                final Indexed[] current = providers.getOrDefault(directory, NO_PROVIDERS);
+                final Indexed[] updated = Arrays.copyOf(current, current.length + 1);
+                updated[current.length] = entry;
+                Arrays.sort(updated, (a, b) -> Long.compare(a.rank, b.rank));
+                providers.put(directory, updated);
+            }
+        }
+
+        // Must be called while holding the lock on indexed
+        private void unindex(final Bundle bundle) {
+            final Indexed entry = indexed.remove(bundle.getBundleId());
+            if (entry != null) {
+                for (final String directory : entry.directories) {
+                    final Indexed[] current = providers.get(directory);
+                    if (current != null) {
+                        final List<Indexed> updated = new ArrayList<>(current.length);
+                        for (final Indexed provider : current) {
+                            if (provider != entry) {
+                                updated.add(provider);
+                            }
+                        }
+                        if (updated.isEmpty()) {
+                            providers.remove(directory);
+                        } else {
+                            providers.put(directory, updated.toArray(NO_PROVIDERS));
+                        }
+                    }
+                }
+            }
+        }
+
+        void bundleChanged(final BundleEvent event) {
+            // Check the state while holding the lock; an event delivered while the index is
+            // being built must be applied after the build, not dropped.
+            synchronized (indexed) {
+                if (!built) {
+                    // The build will see the current state of the bundle
+                    return;
+                }
+                final Bundle bundle = event.getBundle();
+                switch (event.getType()) {
+                    case BundleEvent.RESOLVED: {
+                        unindex(bundle);
+                        index(bundle);
+                        break;
+                    }
+                    case BundleEvent.UPDATED:
+                    case BundleEvent.UNRESOLVED:
+                    case BundleEvent.UNINSTALLED: {
+                        unindex(bundle);
+                        break;
+                    }
+                    default: {
+                        // noop
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Indexed bundle together with the class-loader of the wiring it has been indexed with.
+     */
+    private static final class Indexed {
+        final long rank;
+        final ClassLoader loader;
+        String[] directories = EMPTY;
+
+        Indexed(final long rank, final ClassLoader loader) {
+            this.rank = rank;
+            this.loader = loader;
+        }
     }
-    return null;
-  }
-    
-    
 }
@@ -0,0 +1,212 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+
+import static org.osgi.framework.BundleEvent.INSTALLED;
+import static org.osgi.framework.BundleEvent.RESOLVED;
+import static org.osgi.framework.BundleEvent.UNINSTALLED;
+import static org.osgi.framework.BundleEvent.UNRESOLVED;
+import static org.osgi.framework.BundleEvent.UPDATED;
+
+/**
+ * Cache of the resource paths found in a bundle for a pattern, shared by all
+ * {@link BundleResourcePatternResolver} instances. Entries are keyed by bundle id, bundle
+ * last-modified time, the current wiring (or revision) of the bundle, protocol and pattern,
+ * and the least recently used entries are evicted when the capacity is exceeded. Because a
+ * refresh or an update replaces the wiring, entries of an earlier wiring are never returned,
+ * even if the corresponding bundle event has not been delivered to this cache. Additionally,
+ * the cache remembers patterns for which neither the bundle nor the delegate resolver found
+ * anything. If the cache is registered as bundle listener, the entries of a bundle are removed
+ * as soon as the bundle is updated, unresolved or uninstalled. Because the delegate resolver
+ * searches other bundles too, the remembered patterns are forgotten as soon as any bundle is
+ * installed, resolved or updated.
+ */
+public final class ResourceResultCache implements SynchronousBundleListener {
+    static final int CAPACITY = 2048;
+    private static final ResourceResultCache SHARED = new ResourceResultCache(CAPACITY);
+    private final BoundedCache<Key, String[]> results;
+    private final BoundedCache<Key, Boolean> missing;
+    private final Object missingLock = new Object();
+    private long missingValidity;
+
+    ResourceResultCache(final int capacity) {
+        results = new BoundedCache<>(capacity);
+        missing = new BoundedCache<>(capacity);
+    }
+
+    /**
+     * Returns the instance shared by all resolvers.
+     */
+    public static ResourceResultCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the cached paths, or {@code null} if nothing is cached. The returned array must not
+     * be modified by the caller.
+     */
+    String[] get(final Bundle bundle, final String protocol, final String pattern) {
+        return results.get(new Key(bundle, protocol, pattern));
+    }
+
+    void put(final Bundle bundle, final String protocol, final String pattern, final String[] paths) {
+        results.put(new Key(bundle, protocol, pattern), paths);
+    }
+
+    /**
+     * Returns {@code true} if neither the bundle nor the delegate resolver found any resource
+     * matching the pattern specified.
+     */
+    boolean isMissing(final Bundle bundle, final String protocol, final String pattern) {
+        return missing.get(new Key(bundle, protocol, pattern)) != null;
+    }
+
+    /**
+     * Returns the validity to be passed to {@link #putMissing(Bundle, String, String, long)}; it
+     * must be obtained before the bundle and the delegate resolver are searched.
+     */
+    long getMissingValidity() {
+        synchronized (missingLock) {
+            return missingValidity;
+        }
+    }
+
+    /**
+     * Remembers that nothing matched the pattern specified, unless a bundle has been installed,
+     * resolved or updated since the validity specified has been obtained.
+     */
+    void putMissing(final Bundle bundle, final String protocol, final String pattern, final long validity) {
+        synchronized (missingLock) {
+            if (validity == missingValidity) {
+                missing.put(new Key(bundle, protocol, pattern), Boolean.TRUE);
+            }
+        }
+    }
+
+    // The new bundle content may match patterns the delegate resolver did not find
+    private void forgetMissing() {
+        synchronized (missingLock) {
+            missingValidity++;
+            missing.clear();
+        }
+    }
+
+    private void invalidate(final Bundle bundle) {
+        final long bundleId = bundle.getBundleId();
+        results.invalidate(key -> key.bundleId == bundleId);
+        missing.invalidate(key -> key.bundleId == bundleId);
+    }
+
+    @Override
+    public void bundleChanged(final BundleEvent event) {
+        switch (event.getType()) {
+            case INSTALLED:
+            case RESOLVED: {
+                forgetMissing();
+                break;
+            }
+            case UPDATED: {
+                forgetMissing();
+                invalidate(event.getBundle());
+                break;
+            }
+            case UNRESOLVED:
+            case UNINSTALLED: {
+                invalidate(event.getBundle());
+                break;
+            }
+            default: {
+                // noop
+            }
+        }
+    }
+
+    public int getSize() {
+        return results.size();
+    }
+
+    public long getHits() {
+        return results.getHits();
+    }
+
+    public long getMisses() {
+        return results.getMisses();
+    }
+
+    /**
+     * Returns how many lookups have been answered from the remembered patterns which
+     * matched nothing.
+     */
+    public long getNegativeHits() {
+        return missing.getHits();
+    }
+
+    private static final class Key {
+        final long bundleId;
+        final long lastModified;
+        // Weakly referenced, so that cached entries do not keep an outdated wiring alive
+        final Reference<Object> content;
+        final int contentHash;
+        final String protocol;
+        final String pattern;
+
+        Key(final Bundle bundle, final String protocol, final String pattern) {
+            bundleId = bundle.getBundleId();
+            lastModified = bundle.getLastModified();
+            final Object contentKey = InternalResolver.contentKey(bundle);
+            content = contentKey == null ? null : new WeakReference<>(contentKey);
+            contentHash = System.identityHashCode(contentKey);
+            this.protocol = protocol;
+            this.pattern = pattern;
+        }
+
+        private boolean sameContent(final Key other) {
+            if (content == null || other.content == null) {
+                return content == other.content;
+            }
+            final Object contentKey = content.get();
+            return contentKey != null && contentKey == other.content.get();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return bundleId == other.bundleId && lastModified == other.lastModified
+                    && contentHash == other.contentHash && sameContent(other)
+                    && protocol.equals(other.protocol) && pattern.equals(other.pattern);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Long.hashCode(bundleId);
+            result = 31 * result + Long.hashCode(lastModified);
+            result = 31 * result + contentHash;
+            result = 31 * result + protocol.hashCode();
+            return 31 * result + pattern.hashCode();
+        }
+    }
+}
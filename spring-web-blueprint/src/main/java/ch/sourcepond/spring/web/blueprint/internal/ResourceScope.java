@@ -0,0 +1,98 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+/**
+ * The part of a bundle which needs to be listed in order to find all resources matching an
+ * Ant-style pattern. It consists of the directory before the first wildcard, the pattern of the
+ * last path element (which only contains {@code *} wildcards, as understood by
+ * {@link org.osgi.framework.Bundle#findEntries(String, String, boolean)} and
+ * {@link org.osgi.framework.wiring.BundleWiring#listResources(String, String, int)}), and whether
+ * sub-directories need to be listed. The listed resources are a superset of the matching ones;
+ * they still need to be checked against the pattern.
+ */
+final class ResourceScope {
+    static final String ROOT = "/";
+    static final String ANY = "*";
+    private final String root;
+    private final String filePattern;
+    private final boolean recurse;
+
+    private ResourceScope(final String root, final String filePattern, final boolean recurse) {
+        this.root = root;
+        this.filePattern = filePattern;
+        this.recurse = recurse;
+    }
+
+    private static boolean isWildcard(final char ch) {
+        return ch == '*' || ch == '?' || ch == '{';
+    }
+
+    static ResourceScope of(final String pattern) {
+        int firstWildcard = pattern.length();
+        for (int i = 0; i < pattern.length(); i++) {
+            if (isWildcard(pattern.charAt(i))) {
+                firstWildcard = i;
+                break;
+            }
+        }
+
+        final int rootEnd = pattern.lastIndexOf('/', firstWildcard) + 1;
+        final String root = rootEnd == 0 ? ROOT : pattern.substring(0, rootEnd);
+        final String remainder = pattern.substring(rootEnd);
+        final int lastSeparator = remainder.lastIndexOf('/');
+        String filePattern = remainder.substring(lastSeparator + 1);
+
+        // Only plain names and '*' wildcards can be pushed down to the framework
+        if (filePattern.isEmpty() || filePattern.indexOf('?') != -1 || filePattern.indexOf('{') != -1
+                || filePattern.contains("**")) {
+            filePattern = ANY;
+        }
+        return new ResourceScope(root, filePattern, lastSeparator != -1 || remainder.contains("**"));
+    }
+
+    String getRoot() {
+        return root;
+    }
+
+    String getFilePattern() {
+        return filePattern;
+    }
+
+    boolean isRecurse() {
+        return recurse;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final ResourceScope other = (ResourceScope) o;
+        return recurse == other.recurse && root.equals(other.root) && filePattern.equals(other.filePattern);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * root.hashCode() + filePattern.hashCode()) + (recurse ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return root + (recurse ? "**/" : "") + filePattern;
+    }
+}
@@ -0,0 +1,39 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+/**
+ * Determines which bundles are searched by a {@link ResourceFinderClassLoader}.
+ */
+public enum ResourceSearchScope {
+    /**
+     * All resolved bundles of the framework, ordered by bundle id.
+     */
+    GLOBAL,
+
+    /**
+     * The bundles the web bundle is wired to, in the order of its required wires.
+     */
+    WIRED,
+
+    /**
+     * The resolved bundles whose symbolic name has been explicitly listed, ordered by bundle id.
+     */
+    ALLOWLIST,
+
+    /**
+     * Same as {@link #WIRED}; if no wired bundle provides a resource, same as {@link #GLOBAL}.
+     */
+    WIRED_THEN_GLOBAL
+}
@@ -0,0 +1,218 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import javax.servlet.ServletContext;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Timings and counts of the deployment of a single web bundle, from the moment the bundle context
+ * is available until the web application context has been refreshed. The instance of a deployment
+ * is published as servlet context attribute {@link #BLUEPRINT_STARTUP_METRICS}, where the
+ * instrumented components pick it up. Once {@link #finish()} has been called, nothing is recorded
+ * anymore, so that lookups at runtime do not distort the numbers and do not pay for them.
+ */
+public final class StartupMetrics implements StartupMetricsMBean {
+
+    /**
+     * Servlet context attribute under which the metrics of the deployment are published.
+     */
+    public static final String BLUEPRINT_STARTUP_METRICS = "blueprintStartupMetrics";
+
+    /**
+     * Instance which never records anything.
+     */
+    static final StartupMetrics DISABLED = new StartupMetrics(false);
+
+    /**
+     * Instrumented phases of the deployment.
+     */
+    public enum Phase {
+        CONTAINER_WAIT, COMPONENT_FILTERING, TYPE_RESOLUTION, RESOURCE_RESOLUTION, REFRESH
+    }
+
+    private final LongAdder[] nanos = new LongAdder[Phase.values().length];
+    private final LongAdder[] counts = new LongAdder[Phase.values().length];
+    private final LongAdder findTypeCalls = new LongAdder();
+    private final LongAdder resourcesListed = new LongAdder();
+    private final LongAdder classLoaderProbes = new LongAdder();
+    private final long started = nanoTime();
+    private volatile long finished;
+    private volatile boolean recording;
+
+    private StartupMetrics(final boolean recording) {
+        this.recording = recording;
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] = new LongAdder();
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public StartupMetrics() {
+        this(true);
+    }
+
+    /**
+     * Returns the metrics published on the servlet context specified, or {@link #DISABLED}
+     * if there are none.
+     */
+    static StartupMetrics of(final ServletContext servletContext) {
+        final Object metrics = servletContext.getAttribute(BLUEPRINT_STARTUP_METRICS);
+        return metrics instanceof StartupMetrics ? (StartupMetrics) metrics : DISABLED;
+    }
+
+    /**
+     * Returns the start time to be passed to {@link #stop(Phase, long)}, or 0 if nothing is
+     * recorded.
+     */
+    public long start() {
+        return recording ? nanoTime() : 0;
+    }
+
+    public void stop(final Phase phase, final long start) {
+        if (start != 0 && recording) {
+            nanos[phase.ordinal()].add(nanoTime() - start);
+            counts[phase.ordinal()].increment();
+        }
+    }
+
+    void findTypeCalled() {
+        if (recording) {
+            findTypeCalls.increment();
+        }
+    }
+
+    void resourcesListed(final int count) {
+        if (recording) {
+            resourcesListed.add(count);
+        }
+    }
+
+    void classLoaderProbed() {
+        if (recording) {
+            classLoaderProbes.increment();
+        }
+    }
+
+    /**
+     * Stops recording; must be called when the deployment is complete, whether it succeeded
+     * or not.
+     */
+    public void finish() {
+        if (recording) {
+            finished = nanoTime();
+            recording = false;
+        }
+    }
+
+    private long millis(final Phase phase) {
+        return NANOSECONDS.toMillis(nanos[phase.ordinal()].sum());
+    }
+
+    private long count(final Phase phase) {
+        return counts[phase.ordinal()].sum();
+    }
+
+    @Override
+    public boolean isRecording() {
+        return recording;
+    }
+
+    @Override
+    public long getTotalMillis() {
+        final long end = recording ? nanoTime() : finished;
+        return end == 0 ? 0 : NANOSECONDS.toMillis(end - started);
+    }
+
+    @Override
+    public long getContainerWaitMillis() {
+        return millis(Phase.CONTAINER_WAIT);
+    }
+
+    @Override
+    public long getContainerWaitCount() {
+        return count(Phase.CONTAINER_WAIT);
+    }
+
+    @Override
+    public long getComponentFilteringMillis() {
+        return millis(Phase.COMPONENT_FILTERING);
+    }
+
+    @Override
+    public long getComponentFilteringCount() {
+        return count(Phase.COMPONENT_FILTERING);
+    }
+
+    @Override
+    public long getTypeResolutionMillis() {
+        return millis(Phase.TYPE_RESOLUTION);
+    }
+
+    @Override
+    public long getTypeResolutionCount() {
+        return count(Phase.TYPE_RESOLUTION);
+    }
+
+    @Override
+    public long getResourceResolutionMillis() {
+        return millis(Phase.RESOURCE_RESOLUTION);
+    }
+
+    @Override
+    public long getResourceResolutionCount() {
+        return count(Phase.RESOURCE_RESOLUTION);
+    }
+
+    @Override
+    public long getRefreshMillis() {
+        return millis(Phase.REFRESH);
+    }
+
+    @Override
+    public long getRefreshCount() {
+        return count(Phase.REFRESH);
+    }
+
+    @Override
+    public long getFindTypeCalls() {
+        return findTypeCalls.sum();
+    }
+
+    @Override
+    public long getResourcesListed() {
+        return resourcesListed.sum();
+    }
+
+    @Override
+    public long getClassLoaderProbes() {
+        return classLoaderProbes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "StartupMetrics{total=" + getTotalMillis() + "ms"
+                + ", containerWait=" + getContainerWaitMillis() + "ms/" + getContainerWaitCount()
+                + ", componentFiltering=" + getComponentFilteringMillis() + "ms/" + getComponentFilteringCount()
+                + ", typeResolution=" + getTypeResolutionMillis() + "ms/" + getTypeResolutionCount()
+                + ", resourceResolution=" + getResourceResolutionMillis() + "ms/" + getResourceResolutionCount()
+                + ", refresh=" + getRefreshMillis() + "ms/" + getRefreshCount()
+                + ", findTypeCalls=" + getFindTypeCalls()
+                + ", resourcesListed=" + getResourcesListed()
+                + ", classLoaderProbes=" + getClassLoaderProbes() + "}";
+    }
+}
@@ -0,0 +1,52 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+/**
+ * Management interface of {@link StartupMetrics}. All times are in milliseconds; the time of a
+ * phase is the sum of the times of all its executions. Phases may be nested, for instance
+ * resource resolution happens while the web application context is refreshed.
+ */
+public interface StartupMetricsMBean {
+
+    boolean isRecording();
+
+    long getTotalMillis();
+
+    long getContainerWaitMillis();
+
+    long getContainerWaitCount();
+
+    long getComponentFilteringMillis();
+
+    long getComponentFilteringCount();
+
+    long getTypeResolutionMillis();
+
+    long getTypeResolutionCount();
+
+    long getResourceResolutionMillis();
+
+    long getResourceResolutionCount();
+
+    long getRefreshMillis();
+
+    long getRefreshCount();
+
+    long getFindTypeCalls();
+
+    long getResourcesListed();
+
+    long getClassLoaderProbes();
+}
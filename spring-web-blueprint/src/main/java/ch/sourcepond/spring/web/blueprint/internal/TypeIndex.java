@@ -0,0 +1,97 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.osgi.service.blueprint.container.BlueprintContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static ch.sourcepond.spring.web.blueprint.internal.BlueprintApplicationContext.EMPTY;
+
+/**
+ * Index of the resolved component types of a {@link BlueprintContainer}. The types are
+ * resolved once when the index is created; the bean names matching a requested type are
+ * computed on the first query and cached afterwards. The returned arrays are shared and
+ * must not be modified by the caller.
+ */
+final class TypeIndex {
+    private final ConcurrentMap<Class<?>, String[]> namesByType = new ConcurrentHashMap<>();
+    private final Map<String, Class<?>> types;
+    private final String[] names;
+    private final String[] unresolvedNames;
+
+    /**
+     * @param types           Resolved types mapped by component-id; components whose type could
+     *                        not be resolved must not be contained.
+     * @param unresolvedNames Ids of the components whose type could not be resolved.
+     */
+    TypeIndex(final Map<String, Class<?>> types, final String[] unresolvedNames) {
+        this.types = types;
+        this.unresolvedNames = unresolvedNames;
+        names = types.keySet().toArray(EMPTY);
+    }
+
+    /**
+     * Returns the number of indexed components, resolved or not.
+     */
+    int size() {
+        return names.length + unresolvedNames.length;
+    }
+
+    /**
+     * Returns the ids of the components whose type could not be determined through their
+     * metadata.
+     */
+    String[] getUnresolvedNames() {
+        return unresolvedNames;
+    }
+
+    /**
+     * Returns the resolved type of the component specified, or {@code null} if the component
+     * is unknown or its type could not be resolved.
+     */
+    Class<?> getType(final String id) {
+        return types.get(id);
+    }
+
+    /**
+     * Returns the names of all components whose resolved type is assignable to the type
+     * specified. If the type is {@code null}, the names of all resolved components will be
+     * returned.
+     */
+    String[] getBeanNamesForType(final Class<?> type) {
+        if (type == null) {
+            return names;
+        }
+        String[] matches = namesByType.get(type);
+        if (matches == null) {
+            final List<String> found = new ArrayList<>();
+            for (final Map.Entry<String, Class<?>> entry : types.entrySet()) {
+                if (type.isAssignableFrom(entry.getValue())) {
+                    found.add(entry.getKey());
+                }
+            }
+            matches = found.toArray(EMPTY);
+            final String[] previous = namesByType.putIfAbsent(type, matches);
+            if (previous != null) {
+                matches = previous;
+            }
+        }
+        return matches;
+    }
+}
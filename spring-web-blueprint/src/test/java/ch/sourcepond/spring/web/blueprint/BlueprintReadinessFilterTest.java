@@ -0,0 +1,77 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static ch.sourcepond.spring.web.blueprint.BlueprintReadinessFilter.RETRY_AFTER;
+import static ch.sourcepond.spring.web.blueprint.BlueprintReadinessFilter.RETRY_AFTER_SECONDS;
+import static ch.sourcepond.spring.web.blueprint.BlueprintServletContainerInitializer.BLUEPRINT_CONTEXT;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ *
+ */
+public class BlueprintReadinessFilterTest {
+    private final ServletContext servletContext = mock(ServletContext.class);
+    private final FilterConfig config = mock(FilterConfig.class);
+    private final HttpServletRequest request = mock(HttpServletRequest.class);
+    private final HttpServletResponse response = mock(HttpServletResponse.class);
+    private final FilterChain chain = mock(FilterChain.class);
+    private final BlueprintReadinessFilter filter = new BlueprintReadinessFilter();
+
+    @Before
+    public void setup() {
+        when(config.getServletContext()).thenReturn(servletContext);
+        filter.init(config);
+    }
+
+    @Test
+    public void rejectWhileStarting() throws Exception {
+        filter.doFilter(request, response, chain);
+        verify(response).setHeader(RETRY_AFTER, RETRY_AFTER_SECONDS);
+        verify(response).sendError(eq(SC_SERVICE_UNAVAILABLE), anyString());
+        verifyNoInteractions(chain);
+    }
+
+    @Test
+    public void rejectFailedStart() throws Exception {
+        when(servletContext.getAttribute(BLUEPRINT_CONTEXT)).thenReturn(new Exception());
+        filter.doFilter(request, response, chain);
+        verify(response).sendError(eq(SC_INTERNAL_SERVER_ERROR), anyString());
+        verifyNoInteractions(chain);
+    }
+
+    @Test
+    public void passWhenReady() throws Exception {
+        when(servletContext.getAttribute(BLUEPRINT_CONTEXT)).thenReturn(mock(WebApplicationContext.class));
+        filter.doFilter(request, response, chain);
+        filter.doFilter(request, response, chain);
+        verify(chain, times(2)).doFilter(request, response);
+        verify(response, never()).sendError(anyInt(), anyString());
+        verify(servletContext).getAttribute(BLUEPRINT_CONTEXT);
+    }
+}
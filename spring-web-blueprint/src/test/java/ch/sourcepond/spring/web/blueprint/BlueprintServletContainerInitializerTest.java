@@ -0,0 +1,156 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint;
+
+import ch.sourcepond.spring.web.blueprint.internal.ResourceFinderClassLoader;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.service.blueprint.container.BlueprintContainer;
+import org.springframework.web.context.ConfigurableWebApplicationContext;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextAttributeEvent;
+import java.net.URL;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static ch.sourcepond.spring.web.blueprint.BlueprintServletContainerInitializer.BLUEPRINT_CONTEXT;
+import static ch.sourcepond.spring.web.blueprint.BlueprintServletContainerInitializer.BLUEPRINT_CONTEXT_CLASS;
+import static ch.sourcepond.spring.web.blueprint.BlueprintServletContainerInitializer.OSGI_BUNDLECONTEXT;
+import static java.util.Collections.emptyEnumeration;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.osgi.framework.BundleEvent.INSTALLED;
+import static org.osgi.framework.BundleEvent.RESOLVED;
+import static org.osgi.framework.Version.valueOf;
+import static org.osgi.framework.wiring.BundleWiring.LISTRESOURCES_LOCAL;
+import static org.osgi.framework.wiring.BundleWiring.LISTRESOURCES_RECURSE;
+
+/**
+ *
+ */
+public class BlueprintServletContainerInitializerTest {
+    private final ServletContext servletContext = mock(ServletContext.class);
+    private final Bundle bundle = mock(Bundle.class);
+    private final BundleWiring wiring = mock(BundleWiring.class);
+    private final BundleContext bundleContext = mock(BundleContext.class);
+    private final ServiceReference<BlueprintContainer> containerRef = mock(ServiceReference.class);
+    private final BlueprintContainer container = mock(BlueprintContainer.class);
+    private final Set<BundleListener> listeners = new LinkedHashSet<>();
+    private final BlueprintServletContainerInitializer initializer = new BlueprintServletContainerInitializer();
+
+    @Before
+    public void setup() throws Exception {
+        when(bundle.getSymbolicName()).thenReturn("anySymbolicName");
+        when(bundle.getVersion()).thenReturn(valueOf("1.2.3"));
+        when(bundle.adapt(BundleWiring.class)).thenReturn(wiring);
+        when(bundle.loadClass(anyString())).thenAnswer(inv -> Class.forName(inv.getArgument(0)));
+        when(wiring.getClassLoader()).thenReturn(getClass().getClassLoader());
+        when(bundleContext.getBundle()).thenReturn(bundle);
+        when(bundleContext.getBundle(0)).thenReturn(bundle);
+        when(bundleContext.getBundles()).thenReturn(new Bundle[]{bundle});
+        when(bundleContext.getServiceReferences((String) isNull(), anyString())).thenReturn(new ServiceReference<?>[]{containerRef});
+        when(bundleContext.getService(containerRef)).thenReturn(container);
+        doAnswer(inv -> listeners.add(inv.getArgument(0))).when(bundleContext).addBundleListener(any());
+        doAnswer(inv -> listeners.remove(inv.getArgument(0))).when(bundleContext).removeBundleListener(any());
+        when(servletContext.getInitParameterNames()).thenReturn(emptyEnumeration());
+        when(servletContext.getAttributeNames()).thenReturn(emptyEnumeration());
+        when(servletContext.getInitParameter(BLUEPRINT_CONTEXT_CLASS)).thenReturn(StaticWebApplicationContext.class.getName());
+    }
+
+    private void deploy() {
+        initializer.attributeAdded(new ServletContextAttributeEvent(servletContext, OSGI_BUNDLECONTEXT, bundleContext));
+    }
+
+    private ResourceFinderClassLoader registeredFinder() {
+        final ArgumentCaptor<BundleListener> listeners = ArgumentCaptor.forClass(BundleListener.class);
+        verify(bundleContext, atLeastOnce()).addBundleListener(listeners.capture());
+        for (final BundleListener listener : listeners.getAllValues()) {
+            if (listener instanceof ResourceFinderClassLoader) {
+                return (ResourceFinderClassLoader) listener;
+            }
+        }
+        throw new AssertionError("No ResourceFinderClassLoader registered");
+    }
+
+    private ConfigurableWebApplicationContext publishedContext() {
+        final ArgumentCaptor<Object> context = ArgumentCaptor.forClass(Object.class);
+        verify(servletContext).setAttribute(eq(BLUEPRINT_CONTEXT), context.capture());
+        assertTrue(String.valueOf(context.getValue()), context.getValue() instanceof ConfigurableWebApplicationContext);
+        return (ConfigurableWebApplicationContext) context.getValue();
+    }
+
+    @Test(timeout = 5000)
+    public void keepFinderInformedWhileContextIsOpen() {
+        deploy();
+        final ResourceFinderClassLoader finder = registeredFinder();
+        final ConfigurableWebApplicationContext webContext = publishedContext();
+
+        // The context keeps the finder as its class-loader after the refresh
+        assertSame(finder, webContext.getClassLoader());
+        verify(bundleContext, never()).removeBundleListener(finder);
+
+        webContext.close();
+        verify(bundleContext).removeBundleListener(finder);
+    }
+
+    @Test(timeout = 5000)
+    public void findResourceInstalledAfterRefresh() throws Exception {
+        deploy();
+        final ClassLoader loader = publishedContext().getClassLoader();
+        final String resource = "org/late/late.properties";
+        assertNull(loader.getResource(resource));
+
+        final URL url = new URL("file:/late.properties");
+        final Bundle late = mock(Bundle.class);
+        final BundleWiring lateWiring = mock(BundleWiring.class);
+        final ClassLoader lateLoader = mock(ClassLoader.class);
+        when(late.getBundleId()).thenReturn(2L);
+        when(late.adapt(BundleWiring.class)).thenReturn(lateWiring);
+        when(lateWiring.getClassLoader()).thenReturn(lateLoader);
+        when(lateWiring.listResources("/", "*", LISTRESOURCES_LOCAL | LISTRESOURCES_RECURSE)).thenReturn(singletonList(resource));
+        when(lateLoader.getResource(resource)).thenReturn(url);
+        when(bundleContext.getBundles()).thenReturn(new Bundle[]{bundle, late});
+
+        // Deliver the events like the framework does, to the listeners which are still registered
+        for (final int type : new int[]{INSTALLED, RESOLVED}) {
+            for (final BundleListener listener : listeners) {
+                listener.bundleChanged(new BundleEvent(type, late));
+            }
+        }
+        assertSame(url, loader.getResource(resource));
+    }
+
+    @Test(timeout = 5000)
+    public void removeFinderAfterFailedRefresh() {
+        when(servletContext.getInitParameter(BLUEPRINT_CONTEXT_CLASS)).thenReturn(Object.class.getName());
+        deploy();
+        verify(servletContext).setAttribute(eq(BLUEPRINT_CONTEXT), any(ClassCastException.class));
+        final ResourceFinderClassLoader finder = registeredFinder();
+        verify(bundleContext).removeBundleListener(finder);
+    }
+}
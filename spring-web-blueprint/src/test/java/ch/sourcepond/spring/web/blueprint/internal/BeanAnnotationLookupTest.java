@@ -0,0 +1,140 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.service.blueprint.container.BlueprintContainer;
+import org.osgi.service.blueprint.reflect.BeanMetadata;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+
+import javax.servlet.ServletContext;
+import java.lang.annotation.Retention;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.osgi.framework.ServiceEvent.REGISTERED;
+import static org.osgi.framework.Version.valueOf;
+
+/**
+ * Annotation based lookups against a mocked {@link BlueprintContainer}; components are
+ * never instantiated to find their annotations.
+ */
+public class BeanAnnotationLookupTest {
+    private static final String ANNOTATED = "annotated";
+    private static final String PLAIN = "plain";
+    private static final String UNRESOLVABLE = "unresolvable";
+    private final ServletContext servletContext = mock(ServletContext.class);
+    private final Bundle bundle = mock(Bundle.class);
+    private final BundleWiring wiring = mock(BundleWiring.class);
+    private final BundleContext bundleContext = mock(BundleContext.class);
+    private final ServiceReference<BlueprintContainer> containerRef = mock(ServiceReference.class);
+    private final BlueprintContainer container = mock(BlueprintContainer.class);
+    private final Map<String, BeanMetadata> metadata = new HashMap<>();
+    private final Annotated annotated = new Annotated();
+    private BlueprintApplicationContext context;
+
+    @Retention(RUNTIME)
+    public @interface Marker {
+    }
+
+    @Marker
+    @Retention(RUNTIME)
+    public @interface Composed {
+    }
+
+    @Composed
+    public static class Annotated {
+    }
+
+    public static class Plain {
+    }
+
+    private void bean(final String id, final Class<?> type, final Object instance) {
+        final BeanMetadata bean = mock(BeanMetadata.class);
+        when(bean.getId()).thenReturn(id);
+        // Without class-name and factory, the type cannot be determined through the metadata
+        when(bean.getClassName()).thenReturn(type == null ? null : type.getName());
+        metadata.put(id, bean);
+        when(container.getComponentMetadata(id)).thenReturn(bean);
+        when(container.getComponentInstance(id)).thenReturn(instance);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        when(bundle.getSymbolicName()).thenReturn("anySymbolicName");
+        when(bundle.getVersion()).thenReturn(valueOf("1.2.3"));
+        when(bundle.adapt(BundleWiring.class)).thenReturn(wiring);
+        when(bundle.loadClass(anyString())).thenAnswer(inv -> Class.forName(inv.getArgument(0)));
+        when(wiring.getClassLoader()).thenReturn(getClass().getClassLoader());
+        when(bundleContext.getBundle()).thenReturn(bundle);
+        when(bundleContext.getService(containerRef)).thenReturn(container);
+        bean(ANNOTATED, Annotated.class, annotated);
+        bean(PLAIN, Plain.class, new Plain());
+        // The instance is annotated, but its type is unknown without instantiating it
+        bean(UNRESOLVABLE, null, new Annotated());
+        when(container.getComponentIds()).thenReturn(metadata.keySet());
+
+        context = new BlueprintApplicationContext(servletContext, bundleContext);
+        context.serviceChanged(new ServiceEvent(REGISTERED, containerRef));
+    }
+
+    @Test
+    public void getBeanNamesForMetaAnnotation() {
+        assertArrayEquals(new String[]{ANNOTATED}, context.getBeanNamesForAnnotation(Marker.class));
+        assertArrayEquals(new String[]{ANNOTATED}, context.getBeanNamesForAnnotation(Composed.class));
+        verify(container, never()).getComponentInstance(anyString());
+    }
+
+    @Test
+    public void getBeansWithMetaAnnotation() {
+        assertEquals(singletonMap(ANNOTATED, annotated), context.getBeansWithAnnotation(Marker.class));
+        verify(container, never()).getComponentInstance(PLAIN);
+        verify(container, never()).getComponentInstance(UNRESOLVABLE);
+    }
+
+    @Test
+    public void findMetaAnnotationOnBean() {
+        assertNotNull(context.findAnnotationOnBean(ANNOTATED, Marker.class));
+        assertNull(context.findAnnotationOnBean(PLAIN, Marker.class));
+        verify(container, never()).getComponentInstance(anyString());
+    }
+
+    @Test
+    public void doNotInstantiateUnresolvableComponent() {
+        assertNull(context.findAnnotationOnBean(UNRESOLVABLE, Marker.class));
+        verify(container, never()).getComponentInstance(anyString());
+    }
+
+    @Test(expected = NoSuchBeanDefinitionException.class)
+    public void findAnnotationOnUnknownBean() {
+        context.findAnnotationOnBean("unknown", Marker.class);
+    }
+}
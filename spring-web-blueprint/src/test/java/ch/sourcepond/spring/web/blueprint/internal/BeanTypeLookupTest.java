@@ -0,0 +1,194 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.service.blueprint.container.BlueprintContainer;
+import org.osgi.service.blueprint.reflect.BeanMetadata;
+import org.osgi.service.blueprint.reflect.ComponentMetadata;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.NoUniqueBeanDefinitionException;
+
+import javax.servlet.ServletContext;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.osgi.framework.ServiceEvent.REGISTERED;
+import static org.osgi.framework.Version.valueOf;
+
+/**
+ * Type based lookups against a mocked {@link BlueprintContainer}; components are only
+ * instantiated if their type cannot be determined through their metadata.
+ */
+public class BeanTypeLookupTest {
+    private static final String SERVICE = "service";
+    private static final String OTHER = "other";
+    private static final String UNRESOLVABLE = "unresolvable";
+    private final ServletContext servletContext = mock(ServletContext.class);
+    private final Bundle bundle = mock(Bundle.class);
+    private final BundleWiring wiring = mock(BundleWiring.class);
+    private final BundleContext bundleContext = mock(BundleContext.class);
+    private final ServiceReference<BlueprintContainer> containerRef = mock(ServiceReference.class);
+    private final BlueprintContainer container = mock(BlueprintContainer.class);
+    private final Map<String, BeanMetadata> metadata = new HashMap<>();
+    private final ServiceImpl service = new ServiceImpl();
+    private final Other other = new Other();
+    private final Unresolvable unresolvable = new Unresolvable();
+    private BlueprintApplicationContext context;
+
+    public interface Service {
+    }
+
+    public static class ServiceImpl implements Service {
+    }
+
+    public static class Other {
+    }
+
+    public interface Missing {
+    }
+
+    public static class Unresolvable implements Runnable {
+
+        @Override
+        public void run() {
+            // noop
+        }
+    }
+
+    private void bean(final String id, final Class<?> type, final Object instance) {
+        final BeanMetadata bean = mock(BeanMetadata.class);
+        when(bean.getId()).thenReturn(id);
+        // Without class-name and factory, the type cannot be determined through the metadata
+        when(bean.getClassName()).thenReturn(type == null ? null : type.getName());
+        metadata.put(id, bean);
+        when(container.getComponentMetadata(id)).thenReturn(bean);
+        when(container.getComponentInstance(id)).thenReturn(instance);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        when(bundle.getSymbolicName()).thenReturn("anySymbolicName");
+        when(bundle.getVersion()).thenReturn(valueOf("1.2.3"));
+        when(bundle.adapt(BundleWiring.class)).thenReturn(wiring);
+        when(bundle.loadClass(anyString())).thenAnswer(inv -> Class.forName(inv.getArgument(0)));
+        when(wiring.getClassLoader()).thenReturn(getClass().getClassLoader());
+        when(bundleContext.getBundle()).thenReturn(bundle);
+        when(bundleContext.getService(containerRef)).thenReturn(container);
+        bean(SERVICE, ServiceImpl.class, service);
+        bean(OTHER, Other.class, other);
+        bean(UNRESOLVABLE, null, unresolvable);
+        when(container.getComponentIds()).thenReturn(metadata.keySet());
+
+        context = new BlueprintApplicationContext(servletContext, bundleContext);
+        context.serviceChanged(new ServiceEvent(REGISTERED, containerRef));
+    }
+
+    @Test
+    public void singleMatch() {
+        assertSame(service, context.getBean(Service.class));
+        verify(container, never()).getComponentInstance(OTHER);
+
+        // Only the unresolvable component and the match have been instantiated
+        assertEquals(1, context.getAvoidedInstantiations());
+    }
+
+    @Test
+    public void singleMatchOfUnresolvableComponent() {
+        assertSame(unresolvable, context.getBean(Runnable.class));
+        verify(container, never()).getComponentInstance(SERVICE);
+        verify(container, never()).getComponentInstance(OTHER);
+        assertEquals(2, context.getAvoidedInstantiations());
+    }
+
+    @Test(expected = NoSuchBeanDefinitionException.class)
+    public void noMatch() {
+        context.getBean(Missing.class);
+    }
+
+    @Test
+    public void multipleMatches() {
+        try {
+            context.getBean(Object.class);
+        } catch (final NoUniqueBeanDefinitionException expected) {
+            assertEquals(3, expected.getNumberOfBeansFound());
+            verify(container, never()).getComponentInstance(SERVICE);
+            verify(container, never()).getComponentInstance(OTHER);
+            assertEquals(2, context.getAvoidedInstantiations());
+            return;
+        }
+        throw new AssertionError("NoUniqueBeanDefinitionException expected");
+    }
+
+    @Test
+    public void getBeanNamesForType() {
+        assertArrayEquals(new String[]{SERVICE}, context.getBeanNamesForType(Service.class));
+        assertArrayEquals(new String[0], context.getBeanNamesForType(Missing.class));
+        verify(container, never()).getComponentInstance(anyString());
+    }
+
+    @Test
+    public void isTypeMatch() {
+        assertTrue(context.isTypeMatch(SERVICE, Service.class));
+        assertFalse(context.isTypeMatch(OTHER, Service.class));
+        verify(container, never()).getComponentInstance(anyString());
+
+        // The type of an unresolvable component is determined through its instance
+        assertTrue(context.isTypeMatch(UNRESOLVABLE, Runnable.class));
+        verify(container).getComponentInstance(UNRESOLVABLE);
+    }
+
+    @Test
+    public void isTypeMatchOfEnvironmentComponent() {
+        final String id = "blueprintBundleContext";
+        final ComponentMetadata environment = mock(ComponentMetadata.class);
+        when(environment.getId()).thenReturn(id);
+        when(container.getComponentMetadata(id)).thenReturn(environment);
+        when(container.getComponentInstance(id)).thenReturn(bundleContext);
+        final Set<String> ids = new HashSet<>(metadata.keySet());
+        ids.add(id);
+        when(container.getComponentIds()).thenReturn(ids);
+        context = new BlueprintApplicationContext(servletContext, bundleContext);
+        context.serviceChanged(new ServiceEvent(REGISTERED, containerRef));
+
+        // Neither bean nor reference metadata; the type is determined through the instance
+        assertTrue(context.isTypeMatch(id, BundleContext.class));
+        assertFalse(context.isTypeMatch(id, Service.class));
+    }
+
+    @Test
+    public void isSingletonWithoutExplicitScope() {
+        // A top-level bean without scope attribute is a singleton
+        assertTrue(context.isSingleton(SERVICE));
+        assertFalse(context.isPrototype(SERVICE));
+    }
+}
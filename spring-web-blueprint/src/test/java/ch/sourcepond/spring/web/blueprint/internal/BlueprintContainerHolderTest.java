@@ -0,0 +1,165 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.service.blueprint.container.BlueprintContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static ch.sourcepond.spring.web.blueprint.internal.BlueprintApplicationContext.BLUEPRINT_CONTAINER_CONTAINER_HAS_BEEN_SHUTDOWN;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ *
+ */
+public class BlueprintContainerHolderTest {
+    private static final int READERS = 8;
+    private static final int REGISTRATIONS = 20000;
+    private final BlueprintContainer container1 = mock(BlueprintContainer.class);
+    private final BlueprintContainer container2 = mock(BlueprintContainer.class);
+    private final BlueprintContainerHolder holder = new BlueprintContainerHolder(mock(Bundle.class));
+
+    @Test(timeout = 3000)
+    public void waitForContainer() throws Exception {
+        final AtomicReference<BlueprintContainer> ref = new AtomicReference<>();
+        final Thread th = new Thread(() -> ref.set(holder.state().join().getContainer()));
+        th.start();
+        assertNull(holder.current());
+        assertNotNull(holder.register(container1));
+        th.join();
+        assertSame(container1, ref.get());
+        assertSame(container1, holder.current().getContainer());
+    }
+
+    @Test
+    public void registerSameContainerTwice() {
+        final ContainerGeneration first = holder.register(container1);
+        assertNotNull(first);
+        assertNull(holder.register(container1));
+        final ContainerGeneration second = holder.register(container2);
+        assertNotNull(second);
+        assertTrue(second.getNumber() > first.getNumber());
+        assertSame(second, holder.current());
+        assertSame(second, holder.state().join());
+        assertSame(container2, second.getContainer());
+
+        // Previous generation stays usable for callers which still hold it
+        assertSame(container1, first.getContainer());
+    }
+
+    @Test
+    public void renew() {
+        holder.renew();
+        assertNull(holder.current());
+
+        final ContainerGeneration first = holder.register(container1);
+        holder.renew();
+        final ContainerGeneration renewed = holder.current();
+        assertNotSame(first, renewed);
+        assertSame(container1, renewed.getContainer());
+        assertTrue(renewed.getNumber() > first.getNumber());
+        assertSame(renewed, holder.state().join());
+    }
+
+    @Test(timeout = 3000)
+    public void unregisterWhileWaiting() throws Exception {
+        final AtomicReference<Throwable> ref = new AtomicReference<>();
+        final Thread th = new Thread(() -> {
+            try {
+                holder.state().get();
+            } catch (final InterruptedException | ExecutionException e) {
+                ref.set(e.getCause());
+            }
+        });
+        th.start();
+        holder.unregister();
+        th.join();
+        assertNotNull(ref.get());
+        assertSame(BLUEPRINT_CONTAINER_CONTAINER_HAS_BEEN_SHUTDOWN, ref.get().getMessage());
+        assertNull(holder.current());
+    }
+
+    @Test(timeout = 3000)
+    public void reRegisterAfterUnregister() throws Exception {
+        holder.register(container1);
+        holder.unregister();
+        assertTrue(holder.state().isCompletedExceptionally());
+        holder.register(container2);
+        assertSame(container2, holder.current().getContainer());
+        assertSame(container2, holder.state().get().getContainer());
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentLookupsDuringReRegistration() throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch started = new CountDownLatch(READERS);
+        final List<Thread> readers = new ArrayList<>(READERS);
+
+        for (int i = 0; i < READERS; i++) {
+            final Thread reader = new Thread(() -> {
+                started.countDown();
+                try {
+                    while (running.get()) {
+                        ContainerGeneration generation = holder.current();
+                        if (generation == null) {
+                            try {
+                                generation = holder.state().get(5, SECONDS);
+                            } catch (final ExecutionException e) {
+                                // Container has been unregistered in the meantime
+                                assertSame(BLUEPRINT_CONTAINER_CONTAINER_HAS_BEEN_SHUTDOWN, e.getCause().getMessage());
+                                continue;
+                            }
+                        }
+                        final BlueprintContainer container = generation.getContainer();
+                        assertTrue(container == container1 || container == container2);
+                    }
+                } catch (final Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        started.await();
+        for (int i = 0; i < REGISTRATIONS; i++) {
+            holder.register(i % 2 == 0 ? container1 : container2);
+            if (i % 100 == 0) {
+                holder.unregister();
+            }
+        }
+        holder.register(container2);
+        running.set(false);
+
+        for (final Thread reader : readers) {
+            reader.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertSame(container2, holder.current().getContainer());
+        assertSame(container2, holder.state().get().getContainer());
+    }
+}
@@ -0,0 +1,68 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.wiring.BundleWiring;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+
+import javax.servlet.ServletContext;
+
+import static ch.sourcepond.spring.web.blueprint.internal.BlueprintApplicationContext.BLUEPRINT_CONTAINER_TIMEOUT;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.osgi.framework.Version.valueOf;
+
+/**
+ *
+ */
+public class BlueprintContainerTimeoutTest {
+    private static final String ANY_NAME = "anyName";
+    private final ServletContext servletContext = mock(ServletContext.class);
+    private final Bundle bundle = mock(Bundle.class);
+    private final BundleWiring wiring = mock(BundleWiring.class);
+    private final BundleContext bundleContext = mock(BundleContext.class);
+
+    @Before
+    public void setup() {
+        when(bundle.getSymbolicName()).thenReturn("anySymbolicName");
+        when(bundle.getVersion()).thenReturn(valueOf("1.2.3"));
+        when(bundle.adapt(BundleWiring.class)).thenReturn(wiring);
+        when(wiring.getClassLoader()).thenReturn(getClass().getClassLoader());
+        when(bundleContext.getBundle()).thenReturn(bundle);
+    }
+
+    @Test(timeout = 3000)
+    public void failFastAfterTimeout() {
+        when(servletContext.getInitParameter(BLUEPRINT_CONTAINER_TIMEOUT)).thenReturn(" 100 ");
+        final BlueprintApplicationContext context = new BlueprintApplicationContext(servletContext, bundleContext);
+        try {
+            context.getBean(ANY_NAME);
+        } catch (final BeanDefinitionStoreException expected) {
+            assertTrue(expected.getMessage().contains("100 ms"));
+            return;
+        }
+        throw new AssertionError("BeanDefinitionStoreException expected");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidTimeout() {
+        when(servletContext.getInitParameter(BLUEPRINT_CONTAINER_TIMEOUT)).thenReturn("1s");
+        new BlueprintApplicationContext(servletContext, bundleContext);
+    }
+}
@@ -0,0 +1,91 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleWiring;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.util.AntPathMatcher;
+
+import javax.servlet.ServletContext;
+import java.net.URL;
+
+import static ch.sourcepond.spring.web.blueprint.internal.BundleResourcePatternResolver.BLUEPRINT_PARALLEL_RESOURCES;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ *
+ */
+public class BundleResourcePatternResolverTest {
+    private static long bundleIds = 1000;
+    private final Bundle bundle = mock(Bundle.class);
+    private final BundleWiring wiring = mock(BundleWiring.class);
+    private final ServletContext servletContext = mock(ServletContext.class);
+    private final ResourcePatternResolver delegate = mock(ResourcePatternResolver.class);
+    private final Resource delegateResource = mock(Resource.class);
+    private final BundleResourcePatternResolver resolver = new BundleResourcePatternResolver(delegate,
+            new ClasspathResolver(new AntPathMatcher()), new BundleSpaceResolver(new AntPathMatcher()));
+
+    @Before
+    public void setup() throws Exception {
+        // The result cache is shared, so use a bundle id of its own for every test
+        when(bundle.getBundleId()).thenReturn(bundleIds++);
+        when(bundle.adapt(BundleWiring.class)).thenReturn(wiring);
+        when(wiring.listResources(anyString(), anyString(), anyInt())).thenReturn(emptyList());
+        when(delegate.getResources(anyString())).thenReturn(new Resource[0]);
+        resolver.setBundle(bundle);
+    }
+
+    @Test
+    public void rememberMissOfBothResolvers() throws Exception {
+        assertEquals(0, resolver.getResources("classpath*:META-INF/*.optional").length);
+        assertEquals(0, resolver.getResources("classpath*:META-INF/*.optional").length);
+        verify(delegate).getResources("classpath*:META-INF/*.optional");
+        verify(wiring).listResources(anyString(), anyString(), anyInt());
+    }
+
+    @Test
+    public void parallelFallbackToDelegate() throws Exception {
+        when(servletContext.getInitParameter(BLUEPRINT_PARALLEL_RESOURCES)).thenReturn("true");
+        resolver.configure(servletContext);
+        when(delegate.getResources("classpath*:**/*.xml")).thenReturn(new Resource[]{delegateResource});
+        final Resource[] resources = resolver.getResources("classpath*:**/*.xml");
+        assertEquals(1, resources.length);
+        assertSame(delegateResource, resources[0]);
+    }
+
+    @Test
+    public void parallelPreferBundle() throws Exception {
+        when(servletContext.getInitParameter(BLUEPRINT_PARALLEL_RESOURCES)).thenReturn("true");
+        resolver.configure(servletContext);
+        when(delegate.getResources("classpath*:**/*.xml")).thenReturn(new Resource[]{delegateResource});
+        final ClassLoader loader = mock(ClassLoader.class);
+        final URL url = new URL("file:/a.xml");
+        when(wiring.listResources("/", "*.xml", BundleWiring.LISTRESOURCES_RECURSE)).thenReturn(singletonList("a.xml"));
+        when(wiring.getClassLoader()).thenReturn(loader);
+        when(loader.getResource("a.xml")).thenReturn(url);
+        final Resource[] resources = resolver.getResources("classpath*:**/*.xml");
+        assertEquals(1, resources.length);
+        assertEquals(url, resources[0].getURL());
+    }
+}
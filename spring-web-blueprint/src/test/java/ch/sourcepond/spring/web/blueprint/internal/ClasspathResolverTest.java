@@ -0,0 +1,66 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleWiring;
+import org.springframework.util.AntPathMatcher;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
+import static org.osgi.framework.wiring.BundleWiring.LISTRESOURCES_RECURSE;
+
+/**
+ *
+ */
+public class ClasspathResolverTest {
+    private static final String ALL = "**/*";
+    private final Bundle bundle = mock(Bundle.class);
+    private final BundleWiring wiring = mock(BundleWiring.class);
+    private final ClasspathResolver resolver = new ClasspathResolver(new AntPathMatcher());
+
+    @Before
+    public void setup() {
+        when(bundle.adapt(BundleWiring.class)).thenReturn(wiring);
+        when(wiring.listResources("/", "*", LISTRESOURCES_RECURSE)).thenReturn(asList("META-INF/", "META-INF/a.xml", "b.properties"));
+    }
+
+    @Test
+    public void listOncePerWiring() {
+        final String[] paths = resolver.listResourcePaths(bundle, ALL);
+        assertArrayEquals(new String[]{"META-INF/a.xml", "b.properties"}, paths);
+        assertSame(paths, resolver.listResourcePaths(bundle, ALL));
+        verify(wiring).listResources("/", "*", LISTRESOURCES_RECURSE);
+    }
+
+    @Test
+    public void listAgainAfterRefresh() {
+        resolver.listResourcePaths(bundle, ALL);
+        final BundleWiring refreshed = mock(BundleWiring.class);
+        when(refreshed.listResources("/", "*", LISTRESOURCES_RECURSE)).thenReturn(asList("c.xml"));
+        when(bundle.adapt(BundleWiring.class)).thenReturn(refreshed);
+        assertArrayEquals(new String[]{"c.xml"}, resolver.listResourcePaths(bundle, ALL));
+    }
+
+    @Test
+    public void listOnlyScopeOfPattern() {
+        when(wiring.listResources("META-INF/", "*.xml", 0)).thenReturn(asList("META-INF/a.xml"));
+        assertArrayEquals(new String[]{"META-INF/a.xml"}, resolver.listResourcePaths(bundle, "META-INF/*.xml"));
+        verify(wiring, never()).listResources("/", "*", LISTRESOURCES_RECURSE);
+    }
+}
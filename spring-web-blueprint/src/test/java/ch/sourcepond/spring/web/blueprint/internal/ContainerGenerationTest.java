@@ -0,0 +1,65 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.service.blueprint.container.BlueprintContainer;
+import org.osgi.service.blueprint.reflect.BeanMetadata;
+
+import static java.util.Collections.singleton;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ */
+public class ContainerGenerationTest {
+    private static final String ANY_ID = "anyId";
+    private final Bundle bundle = mock(Bundle.class);
+    private final BlueprintContainer container = mock(BlueprintContainer.class);
+    private final BeanMetadata metadata = mock(BeanMetadata.class);
+    private final Object instance = new Object();
+    private final ContainerGeneration generation = new ContainerGeneration(bundle, container, StartupMetrics.DISABLED, 1);
+
+    @Before
+    public void setup() {
+        when(container.getComponentIds()).thenReturn(singleton(ANY_ID));
+        when(container.getComponentMetadata(ANY_ID)).thenReturn(metadata);
+        when(metadata.getId()).thenReturn(ANY_ID);
+    }
+
+    @Test
+    public void cacheSingleton() {
+        when(metadata.getScope()).thenReturn(BeanMetadata.SCOPE_SINGLETON);
+        generation.cacheIfSingleton(ANY_ID, instance);
+        assertSame(instance, generation.getCachedSingleton(ANY_ID));
+    }
+
+    @Test
+    public void cacheBeanWithoutExplicitScope() {
+        generation.cacheIfSingleton(ANY_ID, instance);
+        assertSame(instance, generation.getCachedSingleton(ANY_ID));
+    }
+
+    @Test
+    public void doNotCachePrototype() {
+        when(metadata.getScope()).thenReturn(BeanMetadata.SCOPE_PROTOTYPE);
+        generation.cacheIfSingleton(ANY_ID, instance);
+        assertNull(generation.getCachedSingleton(ANY_ID));
+    }
+}
@@ -0,0 +1,80 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.junit.Test;
+
+import static ch.sourcepond.spring.web.blueprint.internal.LookupMetrics.BUCKETS;
+import static ch.sourcepond.spring.web.blueprint.internal.LookupMetrics.MAX_TRACKED_NAMES;
+import static ch.sourcepond.spring.web.blueprint.internal.LookupMetrics.Operation.CONTAINS_BEAN;
+import static ch.sourcepond.spring.web.blueprint.internal.LookupMetrics.Operation.GET_BEAN;
+import static ch.sourcepond.spring.web.blueprint.internal.LookupMetrics.bucketOf;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class LookupMetricsTest {
+    private final LookupMetrics metrics = new LookupMetrics(true);
+
+    @Test
+    public void buckets() {
+        assertEquals(0, bucketOf(0));
+        assertEquals(1, bucketOf(1));
+        assertEquals(2, bucketOf(2));
+        assertEquals(2, bucketOf(3));
+        assertEquals(11, bucketOf(1024));
+        assertEquals(BUCKETS - 1, bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void disabled() {
+        metrics.setEnabled(false);
+        metrics.record(GET_BEAN, "bean", metrics.start());
+        assertEquals(0, metrics.getGetBeanCount());
+        assertTrue(metrics.getTopBeans(1).isEmpty());
+    }
+
+    @Test
+    public void record() {
+        metrics.record(GET_BEAN, "a", metrics.start());
+        metrics.record(GET_BEAN, "b", metrics.start());
+        metrics.record(GET_BEAN, "b", metrics.start());
+        metrics.record(CONTAINS_BEAN, "c", metrics.start());
+
+        assertEquals(3, metrics.getGetBeanCount());
+        assertEquals(1, metrics.getContainsBeanCount());
+        long recorded = 0;
+        for (final long count : metrics.getLatencyHistogram("GET_BEAN")) {
+            recorded += count;
+        }
+        assertEquals(3, recorded);
+        assertArrayEquals(new String[]{"b=2", "a=1", "c=1"}, metrics.getTopBeanNames());
+
+        metrics.reset();
+        assertEquals(0, metrics.getGetBeanCount());
+        assertEquals(0, metrics.getTopBeanNames().length);
+    }
+
+    @Test
+    public void limitTrackedNames() {
+        for (int i = 0; i <= MAX_TRACKED_NAMES; i++) {
+            metrics.record(GET_BEAN, "bean" + i, metrics.start());
+        }
+        assertEquals(MAX_TRACKED_NAMES + 1, metrics.getGetBeanCount());
+        assertEquals(1, metrics.getUntrackedNameLookups());
+    }
+}
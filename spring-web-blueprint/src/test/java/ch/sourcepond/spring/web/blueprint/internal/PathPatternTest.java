@@ -0,0 +1,48 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.junit.Test;
+import org.springframework.util.AntPathMatcher;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ */
+public class PathPatternTest {
+    private static final String[] PATTERNS = {
+            "**/*.xml", "**/*", "*.properties", "*", "META-INF/*.xml", "META-INF/*", "META-INF/**/*.xml",
+            "com/acme/web/**/*.class", "com/acme/*.class", "/META-INF/*.xml", "**/a?.xml", "META-INF/{name}.xml",
+            "com/**/web/*.class", "META-INF/spring/*-context.xml", "WEB-INF/web.xml"
+    };
+    private static final String[] PATHS = {
+            "a.xml", "a.properties", ".xml", "/a.xml", "META-INF/a.xml", "META-INF/MANIFEST.MF", "META-INF/sub/b.xml",
+            "META-INF/.xml", "META-INF/a.xml.bak", "com/acme/web/X.class", "com/acme/web/sub/Y.class",
+            "com/acme/Z.class", "com/acme/webx/Z.class", "com/acme/web/x.class/y", "/META-INF/a.xml",
+            "META-INF/spring/app-context.xml", "META-INF/spring/sub/app-context.xml", "WEB-INF/web.xml",
+            "META-INF//a.xml", "com/acme/web//X.class", "com//acme/web/X.class", "ab.xml", "META-INF/ a.xml"
+    };
+    private final AntPathMatcher matcher = new AntPathMatcher();
+
+    @Test
+    public void sameResultsAsAntPathMatcher() {
+        for (final String pattern : PATTERNS) {
+            final PathPattern compiled = PathPattern.compile(matcher, pattern);
+            for (final String path : PATHS) {
+                assertEquals(pattern + " -> " + path, matcher.match(pattern, path), compiled.matches(path));
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+import java.net.URL;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Arrays.asList;
+import static ch.sourcepond.spring.web.blueprint.internal.ResourceSearchScope.ALLOWLIST;
+import static ch.sourcepond.spring.web.blueprint.internal.ResourceSearchScope.WIRED;
+import static ch.sourcepond.spring.web.blueprint.internal.ResourceSearchScope.WIRED_THEN_GLOBAL;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.enumeration;
+import static java.util.Collections.list;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.osgi.framework.BundleEvent.INSTALLED;
+import static org.osgi.framework.BundleEvent.RESOLVED;
+import static org.osgi.framework.BundleEvent.UNRESOLVED;
+import static org.osgi.framework.Constants.SYSTEM_BUNDLE_ID;
+import static org.osgi.framework.wiring.BundleWiring.LISTRESOURCES_LOCAL;
+import static org.osgi.framework.wiring.BundleWiring.LISTRESOURCES_RECURSE;
+
+/**
+ *
+ */
+public class ResourceFinderClassLoaderTest {
+    private static final String RESOURCE = "META-INF/spring.handlers";
+    private final BundleContext context = mock(BundleContext.class);
+    private final Bundle systemBundle = mock(Bundle.class);
+    private final ClassLoader systemLoader = mock(ClassLoader.class);
+    private final Bundle provider = mock(Bundle.class);
+    private final ClassLoader providerLoader = mock(ClassLoader.class);
+    private final Bundle other = mock(Bundle.class);
+    private final ClassLoader otherLoader = mock(ClassLoader.class);
+    private URL url;
+    private ResourceFinderClassLoader finder;
+
+    private static void wire(final Bundle bundle, final long id, final ClassLoader loader, final Collection<String> resources) {
+        final BundleWiring wiring = mock(BundleWiring.class);
+        when(bundle.getBundleId()).thenReturn(id);
+        when(bundle.getSymbolicName()).thenReturn("bundle" + id);
+        when(bundle.adapt(BundleWiring.class)).thenReturn(wiring);
+        when(wiring.getClassLoader()).thenReturn(loader);
+        when(wiring.listResources("/", "*", LISTRESOURCES_LOCAL | LISTRESOURCES_RECURSE)).thenReturn(resources);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        url = new URL("file:/spring.handlers");
+        wire(systemBundle, SYSTEM_BUNDLE_ID, systemLoader, emptyList());
+        wire(provider, 2, providerLoader, asList("META-INF/", RESOURCE, "com/acme/Foo.class"));
+        wire(other, 3, otherLoader, singletonList("com/acme/Bar.class"));
+        when(context.getBundle()).thenReturn(other);
+        when(context.getBundle(SYSTEM_BUNDLE_ID)).thenReturn(systemBundle);
+        when(context.getBundles()).thenReturn(new Bundle[]{systemBundle, provider, other});
+        when(providerLoader.getResource(RESOURCE)).thenReturn(url);
+        when(providerLoader.getResources(RESOURCE)).thenReturn(enumeration(singletonList(url)));
+        finder = new ResourceFinderClassLoader(context);
+    }
+
+    private void wireOtherToProvider() {
+        final BundleWire wire = mock(BundleWire.class);
+        final BundleWiring providerWiring = provider.adapt(BundleWiring.class);
+        when(providerWiring.getBundle()).thenReturn(provider);
+        when(wire.getProviderWiring()).thenReturn(providerWiring);
+        when(other.adapt(BundleWiring.class).getRequiredWires(null)).thenReturn(singletonList(wire));
+    }
+
+    @Test
+    public void probeOnlyProviders() throws Exception {
+        assertSame(url, finder.findResource(RESOURCE));
+        assertEquals(singletonList(url), list(finder.findResources(RESOURCE)));
+        verify(otherLoader, never()).getResource(anyString());
+        verify(otherLoader, never()).getResources(anyString());
+        verifyNoInteractions(systemLoader);
+    }
+
+    @Test
+    public void fallbackToSystemBundle() {
+        finder.findResource("javax/servlet/resources/web-app_3_1.xsd");
+        verify(systemLoader).getResource("javax/servlet/resources/web-app_3_1.xsd");
+        verify(providerLoader, never()).getResource(anyString());
+    }
+
+    @Test
+    public void removeUnresolvedProvider() {
+        assertSame(url, finder.findResource(RESOURCE));
+        finder.bundleChanged(new BundleEvent(UNRESOLVED, provider));
+        assertNull(finder.findResource(RESOURCE));
+        verify(systemLoader).getResource(RESOURCE);
+    }
+
+    @Test(timeout = 3000)
+    public void resolvedWhileIndexing() throws Exception {
+        final String resource = "org/late/late.properties";
+        final URL lateUrl = new URL("file:/late.properties");
+        final Bundle late = mock(Bundle.class);
+        final ClassLoader lateLoader = mock(ClassLoader.class);
+        final BundleWiring lateWiring = mock(BundleWiring.class);
+        final AtomicBoolean resolved = new AtomicBoolean();
+        when(late.getBundleId()).thenReturn(4L);
+        when(late.adapt(BundleWiring.class)).thenAnswer(inv -> resolved.get() ? lateWiring : null);
+        when(lateWiring.getClassLoader()).thenReturn(lateLoader);
+        when(lateWiring.listResources("/", "*", LISTRESOURCES_LOCAL | LISTRESOURCES_RECURSE)).thenReturn(singletonList(resource));
+        when(lateLoader.getResource(resource)).thenReturn(lateUrl);
+        when(context.getBundles()).thenReturn(new Bundle[]{systemBundle, late, provider, other});
+
+        // The bundle is resolved after it has been skipped by the build of the index,
+        // but before the build has finished.
+        final Thread resolver = new Thread(() -> finder.bundleChanged(new BundleEvent(RESOLVED, late)));
+        when(other.adapt(BundleWiring.class).listResources("/", "*", LISTRESOURCES_LOCAL | LISTRESOURCES_RECURSE)).thenAnswer(inv -> {
+            resolved.set(true);
+            resolver.start();
+            while (resolver.getState() != Thread.State.BLOCKED && resolver.isAlive()) {
+                Thread.yield();
+            }
+            return singletonList("com/acme/Bar.class");
+        });
+
+        assertSame(url, finder.findResource(RESOURCE));
+        resolver.join();
+        assertSame(lateUrl, finder.findResource(resource));
+    }
+
+    @Test
+    public void wiredScope() {
+        finder = new ResourceFinderClassLoader(context, WIRED, emptySet());
+        assertNull(finder.findResource(RESOURCE));
+        verify(providerLoader, never()).getResource(anyString());
+
+        wireOtherToProvider();
+        finder = new ResourceFinderClassLoader(context, WIRED, emptySet());
+        assertSame(url, finder.findResource(RESOURCE));
+    }
+
+    @Test
+    public void wiredThenGlobalScope() {
+        finder = new ResourceFinderClassLoader(context, WIRED_THEN_GLOBAL, emptySet());
+        assertSame(url, finder.findResource(RESOURCE));
+    }
+
+    @Test
+    public void allowlistScope() {
+        finder = new ResourceFinderClassLoader(context, ALLOWLIST, singleton("bundle3"));
+        assertNull(finder.findResource(RESOURCE));
+        finder = new ResourceFinderClassLoader(context, ALLOWLIST, singleton("bundle2"));
+        assertSame(url, finder.findResource(RESOURCE));
+    }
+
+    @Test
+    public void rememberMissingResources() throws Exception {
+        final String missing = "META-INF/missing.properties";
+        assertNull(finder.findResource(missing));
+        assertNull(finder.findResource(missing));
+        assertFalse(finder.findResources(missing).hasMoreElements());
+        verify(providerLoader).getResource(missing);
+        verify(systemLoader).getResource(missing);
+        assertEquals(2.0 / 3.0, finder.getNegativeCacheHitRate(), 0.001);
+
+        finder.bundleChanged(new BundleEvent(INSTALLED, mock(Bundle.class)));
+        assertNull(finder.findResource(missing));
+        verify(providerLoader, times(2)).getResource(missing);
+    }
+}
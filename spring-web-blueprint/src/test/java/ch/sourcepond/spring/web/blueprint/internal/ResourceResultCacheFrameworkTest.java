@@ -0,0 +1,155 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.launch.FrameworkFactory;
+import org.osgi.framework.wiring.FrameworkWiring;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Resolves resources of a WAB on an embedded framework while bundles change. The shared
+ * {@link ResourceResultCache} is registered through the bundle context of the WAB, like the
+ * initializer does, so it does not receive the events which are fired while the WAB is stopped.
+ */
+public class ResourceResultCacheFrameworkTest {
+    private static final String PATTERN = "classpath*:static/*.txt";
+
+    @Rule
+    public final TemporaryFolder storage = new TemporaryFolder();
+    private final ResourcePatternResolver delegate = mock(ResourcePatternResolver.class);
+    private final BundleResourcePatternResolver resolver = new BundleResourcePatternResolver(delegate);
+    private Framework framework;
+    private Bundle wab;
+
+    private static InputStream bundle(final Map<String, String> headers, final String... entries) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
+        for (final Map.Entry<String, String> header : headers.entrySet()) {
+            manifest.getMainAttributes().putValue(header.getKey(), header.getValue());
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final JarOutputStream jar = new JarOutputStream(out, manifest)) {
+            for (final String entry : entries) {
+                jar.putNextEntry(new JarEntry(entry));
+                jar.write(entry.getBytes("UTF-8"));
+                jar.closeEntry();
+            }
+        }
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    private static Map<String, String> headers(final String... keysAndValues) {
+        final Map<String, String> headers = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            headers.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return headers;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        when(delegate.getResources(anyString())).thenReturn(new Resource[0]);
+        final Map<String, String> config = new HashMap<>();
+        config.put(Constants.FRAMEWORK_STORAGE, storage.getRoot().getAbsolutePath());
+        config.put(Constants.FRAMEWORK_STORAGE_CLEAN, Constants.FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT);
+        framework = ServiceLoader.load(FrameworkFactory.class).iterator().next().newFramework(config);
+        framework.start();
+        wab = framework.getBundleContext().installBundle("wab", bundle(
+                headers(Constants.BUNDLE_SYMBOLICNAME, "wab"), "static/a.txt"));
+        resolver.setBundle(wab);
+        start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        framework.stop();
+        framework.waitForStop(10000);
+    }
+
+    private void start() throws Exception {
+        wab.start();
+        wab.getBundleContext().addBundleListener(ResourceResultCache.shared());
+    }
+
+    private TreeSet<String> filenames() throws IOException {
+        final TreeSet<String> filenames = new TreeSet<>();
+        for (final Resource resource : resolver.getResources(PATTERN)) {
+            filenames.add(resource.getFilename());
+        }
+        return filenames;
+    }
+
+    @Test(timeout = 20000)
+    public void resolveAttachedFragmentAfterRefresh() throws Exception {
+        assertEquals(new TreeSet<>(asList("a.txt")), filenames());
+
+        // Redeploy the WAB with a newly attached fragment
+        wab.stop();
+        framework.getBundleContext().installBundle("fragment", bundle(
+                headers(Constants.BUNDLE_SYMBOLICNAME, "fragment", Constants.FRAGMENT_HOST, "wab"), "static/b.txt"));
+        final CountDownLatch refreshed = new CountDownLatch(1);
+        framework.adapt(FrameworkWiring.class).refreshBundles(singleton(wab), event -> refreshed.countDown());
+        assertTrue(refreshed.await(10, SECONDS));
+        start();
+
+        assertEquals(new TreeSet<>(asList("a.txt", "b.txt")), filenames());
+    }
+
+    @Test(timeout = 20000)
+    public void resolveDelegateResourceOfBundleInstalledLater() throws Exception {
+        final String pattern = "classpath*:META-INF/late/*.xml";
+        assertEquals(0, resolver.getResources(pattern).length);
+
+        // The delegate finds the resource through the class-loader of the web context
+        final Resource late = mock(Resource.class);
+        when(delegate.getResources(pattern)).thenReturn(new Resource[]{late});
+        framework.getBundleContext().installBundle("late", bundle(
+                headers(Constants.BUNDLE_SYMBOLICNAME, "late"), "META-INF/late/late.xml"));
+
+        assertEquals(asList(late), asList(resolver.getResources(pattern)));
+    }
+}
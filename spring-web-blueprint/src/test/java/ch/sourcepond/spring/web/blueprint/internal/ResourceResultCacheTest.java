@@ -0,0 +1,115 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.wiring.BundleWiring;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.osgi.framework.BundleEvent.INSTALLED;
+import static org.osgi.framework.BundleEvent.RESOLVED;
+import static org.osgi.framework.BundleEvent.STARTED;
+import static org.osgi.framework.BundleEvent.UNRESOLVED;
+
+/**
+ *
+ */
+public class ResourceResultCacheTest {
+    private static final String PROTOCOL = "classpath:";
+    private static final String PATTERN = "META-INF/*.xml";
+    private final Bundle bundle = mock(Bundle.class);
+    private final Bundle otherBundle = mock(Bundle.class);
+    private final ResourceResultCache cache = new ResourceResultCache(2);
+    private final String[] paths = new String[0];
+
+    @Before
+    public void setup() {
+        when(bundle.getBundleId()).thenReturn(1L);
+        when(bundle.getLastModified()).thenReturn(100L);
+        when(otherBundle.getBundleId()).thenReturn(2L);
+    }
+
+    @Test
+    public void hitAndMiss() {
+        assertNull(cache.get(bundle, PROTOCOL, PATTERN));
+        cache.put(bundle, PROTOCOL, PATTERN, paths);
+        assertSame(paths, cache.get(bundle, PROTOCOL, PATTERN));
+        assertNull(cache.get(bundle, "classpath*:", PATTERN));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void missAfterUpdate() {
+        cache.put(bundle, PROTOCOL, PATTERN, paths);
+        when(bundle.getLastModified()).thenReturn(200L);
+        assertNull(cache.get(bundle, PROTOCOL, PATTERN));
+    }
+
+    @Test
+    public void missAfterRefresh() {
+        when(bundle.adapt(BundleWiring.class)).thenReturn(mock(BundleWiring.class));
+        cache.put(bundle, PROTOCOL, PATTERN, paths);
+        assertSame(paths, cache.get(bundle, PROTOCOL, PATTERN));
+
+        // A refresh replaces the wiring but does not change the last-modified time
+        when(bundle.adapt(BundleWiring.class)).thenReturn(mock(BundleWiring.class));
+        assertNull(cache.get(bundle, PROTOCOL, PATTERN));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        cache.put(bundle, PROTOCOL, "a", paths);
+        cache.put(bundle, PROTOCOL, "b", paths);
+        cache.get(bundle, PROTOCOL, "a");
+        cache.put(bundle, PROTOCOL, "c", paths);
+        assertEquals(2, cache.getSize());
+        assertNull(cache.get(bundle, PROTOCOL, "b"));
+        assertSame(paths, cache.get(bundle, PROTOCOL, "a"));
+    }
+
+    @Test
+    public void forgetMissingWhenAnyBundleIsInstalled() {
+        cache.putMissing(bundle, PROTOCOL, PATTERN, cache.getMissingValidity());
+        assertTrue(cache.isMissing(bundle, PROTOCOL, PATTERN));
+        cache.bundleChanged(new BundleEvent(STARTED, otherBundle));
+        assertTrue(cache.isMissing(bundle, PROTOCOL, PATTERN));
+        cache.bundleChanged(new BundleEvent(INSTALLED, otherBundle));
+        assertFalse(cache.isMissing(bundle, PROTOCOL, PATTERN));
+    }
+
+    @Test
+    public void doNotRememberMissObtainedBeforeBundleChange() {
+        final long validity = cache.getMissingValidity();
+        cache.bundleChanged(new BundleEvent(RESOLVED, otherBundle));
+        cache.putMissing(bundle, PROTOCOL, PATTERN, validity);
+        assertFalse(cache.isMissing(bundle, PROTOCOL, PATTERN));
+    }
+
+    @Test
+    public void invalidateOnBundleEvent() {
+        cache.put(bundle, PROTOCOL, PATTERN, paths);
+        cache.put(otherBundle, PROTOCOL, PATTERN, paths);
+        cache.bundleChanged(new BundleEvent(STARTED, bundle));
+        assertEquals(2, cache.getSize());
+        cache.bundleChanged(new BundleEvent(UNRESOLVED, bundle));
+        assertNull(cache.get(bundle, PROTOCOL, PATTERN));
+        assertSame(paths, cache.get(otherBundle, PROTOCOL, PATTERN));
+    }
+}
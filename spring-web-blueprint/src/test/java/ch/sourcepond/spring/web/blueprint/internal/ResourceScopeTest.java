@@ -0,0 +1,54 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ */
+public class ResourceScopeTest {
+
+    private static void assertScope(final String expected, final String pattern) {
+        assertEquals(expected, ResourceScope.of(pattern).toString());
+    }
+
+    @Test
+    public void fixedRoot() {
+        assertScope("com/acme/web/**/*.class", "com/acme/web/**/*.class");
+        assertScope("META-INF/*.xml", "META-INF/*.xml");
+        assertScope("com/**/x.xml", "com/*/web/x.xml");
+        assertScope("META-INF/**/*", "META-INF/**");
+    }
+
+    @Test
+    public void noRoot() {
+        assertScope("/**/*.xml", "**/*.xml");
+        assertScope("/*.properties", "*.properties");
+        assertScope("/**/*", "**");
+    }
+
+    @Test
+    public void plainPath() {
+        assertScope("WEB-INF/web.xml", "WEB-INF/web.xml");
+    }
+
+    @Test
+    public void unsupportedFilePattern() {
+        assertScope("META-INF/*", "META-INF/a?.xml");
+        assertScope("META-INF/*", "META-INF/{name}.xml");
+    }
+}
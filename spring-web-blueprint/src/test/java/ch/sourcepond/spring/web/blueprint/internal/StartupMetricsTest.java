@@ -0,0 +1,67 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.spring.web.blueprint.internal;
+
+import org.junit.Test;
+
+import javax.servlet.ServletContext;
+
+import static ch.sourcepond.spring.web.blueprint.internal.StartupMetrics.BLUEPRINT_STARTUP_METRICS;
+import static ch.sourcepond.spring.web.blueprint.internal.StartupMetrics.Phase.REFRESH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ */
+public class StartupMetricsTest {
+    private final StartupMetrics metrics = new StartupMetrics();
+
+    @Test
+    public void recordUntilFinished() {
+        metrics.stop(REFRESH, metrics.start());
+        metrics.findTypeCalled();
+        metrics.resourcesListed(3);
+        metrics.classLoaderProbed();
+        metrics.finish();
+        assertFalse(metrics.isRecording());
+
+        metrics.stop(REFRESH, metrics.start());
+        metrics.findTypeCalled();
+        metrics.resourcesListed(3);
+        metrics.classLoaderProbed();
+
+        assertEquals(1, metrics.getRefreshCount());
+        assertEquals(1, metrics.getFindTypeCalls());
+        assertEquals(3, metrics.getResourcesListed());
+        assertEquals(1, metrics.getClassLoaderProbes());
+        assertEquals(0, metrics.getContainerWaitCount());
+    }
+
+    @Test
+    public void ofServletContext() {
+        final ServletContext servletContext = mock(ServletContext.class);
+        assertSame(StartupMetrics.DISABLED, StartupMetrics.of(servletContext));
+        assertFalse(StartupMetrics.DISABLED.isRecording());
+        assertEquals(0, StartupMetrics.DISABLED.start());
+
+        when(servletContext.getAttribute(BLUEPRINT_STARTUP_METRICS)).thenReturn(metrics);
+        assertSame(metrics, StartupMetrics.of(servletContext));
+        assertTrue(metrics.isRecording());
+    }
+}